@@ -1,5 +1,12 @@
 #!/bin/bash
 
+# usage: export.sh [--since "yyyy-MM-dd HH:mm:ss"]
+# with --since only rows updated since given UTC time are exported (delta upload)
+since=""
+if [ "$1" == "--since" ]; then
+   since="$2"
+fi
+
 # what to export
 declare -a StringArray=("users" "issues" "labels" "timelogs" "label_links" "boards" "projects" "merge_requests" "namespaces" )
 # temp dir
@@ -9,7 +16,11 @@ chmod a+rwX $tmp_dir
 # Iterate the string array using for loop
 for val in "${StringArray[@]}"; do
    echo "Exporting $val to $tmp_dir/$val.csv"
-   sudo gitlab-psql -c "copy $val TO '$tmp_dir/$val.csv' with (format csv, header)"
+   if [ -n "$since" ]; then
+      sudo gitlab-psql -c "copy (select * from $val where updated_at >= '$since') TO '$tmp_dir/$val.csv' with (format csv, header)"
+   else
+      sudo gitlab-psql -c "copy $val TO '$tmp_dir/$val.csv' with (format csv, header)"
+   fi
 done
 
 rm export.zip
@@ -1,6 +1,8 @@
 package cz.atlascon.timereporting;
 
+import com.google.common.base.Preconditions;
 import cz.atlascon.timereporting.domain.*;
+import cz.atlascon.timereporting.services.TimeLogStore;
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,11 +12,15 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
-import java.time.temporal.TemporalAccessor;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_TIME;
 
+/**
+ * csv record readers of one export file, header names are bound to column indexes once per file
+ */
 public class Parser {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Parser.class);
@@ -25,116 +31,278 @@ public class Parser {
             .append(ISO_LOCAL_TIME)
             .toFormatter();
 
-    private CSVRecord record;
+    private final Map<String, Integer> header;
 
-    public void setRecord(final CSVRecord record) {
-        this.record = record;
+    public Parser(final Map<String, Integer> header) {
+        this.header = header;
     }
 
-    private String getString(final String key) {
-        return record.get(key);
+    private int column(final String key) {
+        final Integer column = header.get(key);
+        Preconditions.checkArgument(column != null, "Missing column %s, header %s", key, header.keySet());
+        return column;
     }
 
-    private Integer getInt(final String key) {
-        final String num = getString(key);
-        return num.isBlank() ? null : Integer.parseInt(num);
+    private static Integer getInt(final CSVRecord record, final int column) {
+        final String num = record.get(column);
+        return num.isBlank() ? null : parseInt(num);
     }
 
-    private final Instant getInstant(String key) {
-        final String val = getString(key);
-        if (val.isBlank()) {
-            return null;
-        } else {
-            final TemporalAccessor parsed = DATE_TIME_FORMATTER.parse(val);
-            return LocalDateTime.from(parsed).toInstant(ZoneOffset.UTC);
+    private static int getInt(final CSVRecord record, final int column, final int blank) {
+        final String num = record.get(column);
+        return num.isBlank() ? blank : parseInt(num);
+    }
+
+    private static long getEpochSecond(final CSVRecord record, final int column) {
+        return parseEpochSecond(record.get(column));
+    }
+
+    private static long getEpochSecond(final CSVRecord record, final int column, final long blank) {
+        final String val = record.get(column);
+        return val.isBlank() ? blank : parseEpochSecond(val);
+    }
+
+    private static Instant getInstant(final CSVRecord record, final int column) {
+        final String val = record.get(column);
+        return val.isBlank() ? null : parseInstant(val);
+    }
+
+    /**
+     * UTC timestamp with fraction of second, same fast path as {@link #parseEpochSecond(CharSequence)}
+     */
+    static Instant parseInstant(final CharSequence val) {
+        if (isPsqlTimestamp(val)) {
+            return Instant.ofEpochSecond(psqlEpochSecond(val), psqlNanos(val));
+        }
+        return LocalDateTime.from(DATE_TIME_FORMATTER.parse(val)).toInstant(ZoneOffset.UTC);
+    }
+
+    /**
+     * decimal int read digit by digit, {@link Integer#parseInt(String)} only for long / malformed input
+     */
+    static int parseInt(final CharSequence val) {
+        final int length = val.length();
+        final int start = length > 0 && val.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 9) {
+            return Integer.parseInt(val.toString());
+        }
+        int num = 0;
+        for (int i = start; i < length; i++) {
+            final int digit = val.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(val.toString());
+            }
+            num = num * 10 + digit;
+        }
+        return start == 0 ? num : -num;
+    }
+
+    /**
+     * epoch second of UTC timestamp, "yyyy-MM-dd HH:mm:ss[.ffffff]" as emitted by gitlab-psql is read
+     * straight from the characters, anything else goes through the formatter
+     */
+    static long parseEpochSecond(final CharSequence val) {
+        if (isPsqlTimestamp(val)) {
+            return psqlEpochSecond(val);
+        }
+        return LocalDateTime.from(DATE_TIME_FORMATTER.parse(val)).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static boolean isPsqlTimestamp(final CharSequence val) {
+        final int length = val.length();
+        if (length < 19 || length == 20 || length > 29) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = val.charAt(i);
+            final boolean valid = switch (i) {
+                case 4, 7 -> c == '-';
+                case 10 -> c == ' ';
+                case 13, 16 -> c == ':';
+                case 19 -> c == '.';
+                default -> c >= '0' && c <= '9';
+            };
+            if (!valid) {
+                return false;
+            }
+        }
+        final int year = digits(val, 0, 4);
+        final int month = digits(val, 5, 7);
+        final int day = digits(val, 8, 10);
+        return month >= 1 && month <= 12
+                && day >= 1 && day <= lengthOfMonth(year, month)
+                && digits(val, 11, 13) < 24
+                && digits(val, 14, 16) < 60
+                && digits(val, 17, 19) < 60;
+    }
+
+    private static int lengthOfMonth(final int year, final int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static long psqlEpochSecond(final CharSequence val) {
+        final long days = epochDay(digits(val, 0, 4), digits(val, 5, 7), digits(val, 8, 10));
+        return days * 86_400L + digits(val, 11, 13) * 3600 + digits(val, 14, 16) * 60 + digits(val, 17, 19);
+    }
+
+    private static int psqlNanos(final CharSequence val) {
+        int nanos = 0;
+        for (int i = 20; i < 29; i++) {
+            nanos = nanos * 10 + (i < val.length() ? val.charAt(i) - '0' : 0);
         }
+        return nanos;
     }
 
-    public TimeLog parseTimeLog() {
-        return new TimeLog(
-                getInt("id"),
-                getInt("time_spent"),
-                getInt("user_id"),
-                getInstant("created_at"),
-                getInstant("updated_at"),
-                getInt("issue_id"),
-                getInt("merge_request_id"));
-    }
-
-    public Namespace parseGroup() {
-        return new Namespace(
-                getInt("id"),
-                getString("name"),
-                getString("description")
-        );
-    }
-
-    public Label parseLabel() {
-        return new Label(
-                getInt("id"),
-                getString("title"),
-                getString("color"),
-                getString("description")
-        );
-    }
-
-    public User parseUser() {
-        return new User(
-                getInt("id"),
-                getString("email"),
-                getString("name")
-        );
-    }
-
-    public Project parseProject() {
-        return new Project(
-                getInt("id"),
-                getString("name"),
-                getString("description"),
-                getInt("namespace_id")
-        );
-    }
-
-    public Issue parseIssue() {
-        return new Issue(
-                getInt("id"),
-                getInt("author_id"),
-                getInt("project_id"),
-                getInstant("created_at"),
-                getString("title"),
-                getString("description")
-        );
-    }
-
-    public MergeRequest parseMergeRequest() {
-        return new MergeRequest(
-                getInt("id"),
-                getInt("author_id"),
-                getInt("target_project_id"),
-                getString("target_branch"),
-                getString("source_branch"),
-                getInstant("created_at"),
-                getString("title")
-        );
-    }
-
-    public LabelLink parseLabelLink() {
-        final String tt = getString("target_type");
-        final LabelLink.Type type;
-        if (tt.equals("MergeRequest")) {
-            type = LabelLink.Type.MERGE_REQUEST;
-        } else if (tt.equals("Issue")) {
-            type = LabelLink.Type.ISSUE;
-        } else {
-            LOGGER.warn("Unknown label link {}", tt);
-            type = null;
+    private static int digits(final CharSequence val, final int from, final int to) {
+        int num = 0;
+        for (int i = from; i < to; i++) {
+            num = num * 10 + (val.charAt(i) - '0');
         }
-        return new LabelLink(
-                getInt("id"),
-                getInt("label_id"),
-                getInt("target_id"),
-                type
-        );
+        return num;
+    }
+
+    /**
+     * days since 1970-01-01 of proleptic gregorian date, same result as {@link java.time.LocalDate#toEpochDay()}
+     */
+    private static long epochDay(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    public Consumer<CSVRecord> timeLogs(final TimeLogStore.Builder sink) {
+        final int id = column("id");
+        final int timeSpent = column("time_spent");
+        final int userId = column("user_id");
+        final int createdAt = column("created_at");
+        final int updatedAt = column("updated_at");
+        final int issueId = column("issue_id");
+        final int mergeRequestId = column("merge_request_id");
+        return record -> sink.add(
+                getInt(record, id, TimeLogStore.NONE),
+                getEpochSecond(record, createdAt),
+                // never updated, ignored by last update of the store
+                getEpochSecond(record, updatedAt, Long.MIN_VALUE),
+                getInt(record, timeSpent, 0),
+                getInt(record, userId, TimeLogStore.NONE),
+                getInt(record, issueId, TimeLogStore.NONE),
+                getInt(record, mergeRequestId, TimeLogStore.NONE));
+    }
+
+    public Consumer<CSVRecord> groups(final Consumer<Namespace> sink) {
+        final int id = column("id");
+        final int name = column("name");
+        final int description = column("description");
+        return record -> sink.accept(new Namespace(
+                getInt(record, id),
+                record.get(name),
+                record.get(description)
+        ));
+    }
+
+    public Consumer<CSVRecord> labels(final Consumer<Label> sink) {
+        final int id = column("id");
+        final int title = column("title");
+        final int color = column("color");
+        final int description = column("description");
+        return record -> sink.accept(new Label(
+                getInt(record, id),
+                record.get(title),
+                record.get(color),
+                record.get(description)
+        ));
+    }
+
+    public Consumer<CSVRecord> users(final Consumer<User> sink) {
+        final int id = column("id");
+        final int email = column("email");
+        final int name = column("name");
+        return record -> sink.accept(new User(
+                getInt(record, id),
+                record.get(email),
+                record.get(name)
+        ));
+    }
+
+    public Consumer<CSVRecord> projects(final Consumer<Project> sink) {
+        final int id = column("id");
+        final int name = column("name");
+        final int description = column("description");
+        final int namespaceId = column("namespace_id");
+        return record -> sink.accept(new Project(
+                getInt(record, id),
+                record.get(name),
+                record.get(description),
+                getInt(record, namespaceId)
+        ));
+    }
+
+    public Consumer<CSVRecord> issues(final Consumer<Issue> sink) {
+        final int id = column("id");
+        final int authorId = column("author_id");
+        final int projectId = column("project_id");
+        final int createdAt = column("created_at");
+        final int title = column("title");
+        final int description = column("description");
+        return record -> sink.accept(new Issue(
+                getInt(record, id),
+                getInt(record, authorId),
+                getInt(record, projectId),
+                getInstant(record, createdAt),
+                record.get(title),
+                record.get(description)
+        ));
+    }
+
+    public Consumer<CSVRecord> mergeRequests(final Consumer<MergeRequest> sink) {
+        final int id = column("id");
+        final int authorId = column("author_id");
+        final int targetProjectId = column("target_project_id");
+        final int targetBranch = column("target_branch");
+        final int sourceBranch = column("source_branch");
+        final int createdAt = column("created_at");
+        final int title = column("title");
+        return record -> sink.accept(new MergeRequest(
+                getInt(record, id),
+                getInt(record, authorId),
+                getInt(record, targetProjectId),
+                record.get(targetBranch),
+                record.get(sourceBranch),
+                getInstant(record, createdAt),
+                record.get(title)
+        ));
+    }
+
+    public Consumer<CSVRecord> labelLinks(final Consumer<LabelLink> sink) {
+        final int id = column("id");
+        final int labelId = column("label_id");
+        final int targetId = column("target_id");
+        final int targetType = column("target_type");
+        return record -> {
+            final String tt = record.get(targetType);
+            final LabelLink.Type type;
+            if (tt.equals("MergeRequest")) {
+                type = LabelLink.Type.MERGE_REQUEST;
+            } else if (tt.equals("Issue")) {
+                type = LabelLink.Type.ISSUE;
+            } else {
+                LOGGER.warn("Unknown label link {}", tt);
+                type = null;
+            }
+            sink.accept(new LabelLink(
+                    getInt(record, id),
+                    getInt(record, labelId),
+                    getInt(record, targetId),
+                    type
+            ));
+        };
     }
 
 }
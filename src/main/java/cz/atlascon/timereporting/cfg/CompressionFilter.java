@@ -0,0 +1,67 @@
+package cz.atlascon.timereporting.cfg;
+
+import com.google.common.base.Splitter;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * picks gzip for {@link Compressed} responses when the client accepts it, entity is then compressed by
+ * {@link org.glassfish.jersey.message.GZipEncoder} which leaves responses without the header alone
+ */
+@Provider
+@Compressed
+public class CompressionFilter implements ContainerResponseFilter {
+
+    private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Splitter SEMICOLON = Splitter.on(';').trimResults();
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext,
+                       final ContainerResponseContext cres) throws IOException {
+        cres.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (cres.hasEntity() && !cres.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)
+                && acceptsGzip(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING))) {
+            cres.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+    }
+
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        // gzip named explicitly wins over wildcard
+        Boolean any = null;
+        for (String encoding : COMMA.split(acceptEncoding)) {
+            final List<String> parts = SEMICOLON.splitToList(encoding);
+            final String name = parts.get(0).toLowerCase(Locale.ROOT);
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                return !refused(parts);
+            } else if (name.equals("*")) {
+                any = !refused(parts);
+            }
+        }
+        return Boolean.TRUE.equals(any);
+    }
+
+    // q=0 means not acceptable
+    private static boolean refused(final List<String> parts) {
+        for (String param : parts.subList(1, parts.size())) {
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
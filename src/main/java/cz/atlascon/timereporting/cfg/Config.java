@@ -1,28 +1,45 @@
 package cz.atlascon.timereporting.cfg;
 
 import cz.atlascon.timereporting.resources.HealthcheckResource;
+import cz.atlascon.timereporting.resources.MetricsResource;
 import cz.atlascon.timereporting.resources.ReportResource;
+import cz.atlascon.timereporting.services.Metrics;
 import org.glassfish.jersey.logging.LoggingFeature;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.inject.Inject;
 import javax.ws.rs.ApplicationPath;
 
 @Component
 @ApplicationPath("/rest")
 public class Config extends ResourceConfig {
 
+    @Value("${timereporting.gzip:true}")
+    private boolean gzip;
+    @Inject
+    private Metrics metrics;
+
     @PostConstruct
     public void registerEndpoints() {
         // jersey
         register(LoggingFeature.class);
         register(MultiPartFeature.class);
         register(CORSFilter.class);
+        register(new LatencyListener(metrics));
+        if (gzip) {
+            // report responses are compressed for clients accepting gzip
+            register(GZipEncoder.class);
+            register(CompressionFilter.class);
+        }
         // app
         register(ReportResource.class);
         register(HealthcheckResource.class);
+        register(MetricsResource.class);
 
     }
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package cz.atlascon.timereporting.cfg;
+
+import cz.atlascon.timereporting.services.Metrics;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+/**
+ * latency of every matched endpoint in microseconds, until response is fully written - streamed bodies included
+ */
+public class LatencyListener implements ApplicationEventListener {
+
+    private final Metrics metrics;
+
+    public LatencyListener(final Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onEvent(final ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(final RequestEvent requestEvent) {
+        final long start = System.nanoTime();
+        return event -> {
+            if (event.getType() != RequestEvent.Type.FINISHED) {
+                return;
+            }
+            final ResourceMethod method = event.getUriInfo().getMatchedResourceMethod();
+            if (method != null) {
+                metrics.histogram("http." + path(method.getParent()) + ".micros").record((System.nanoTime() - start) / 1_000);
+            }
+        };
+    }
+
+    private static String path(final Resource resource) {
+        // e.g. /timelogs/userCalendar/{year}/{userId}
+        final String parent = resource.getParent() == null ? "" : path(resource.getParent());
+        final String path = resource.getPath() == null ? "" : resource.getPath();
+        return parent + (path.startsWith("/") || path.isEmpty() ? path : "/" + path);
+    }
+
+}
@@ -0,0 +1,48 @@
+package cz.atlascon.timereporting.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import cz.atlascon.timereporting.services.Metrics;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+@Resource
+@Path("/metrics")
+@Singleton
+public class MetricsResource {
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final Metrics metrics;
+
+    @Inject
+    public MetricsResource(final Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @GET
+    @Produces("application/json;charset=UTF-8")
+    public String getMetrics() {
+        final ObjectNode node = om.createObjectNode();
+        final ObjectNode counters = node.putObject("counters");
+        metrics.getCounters().forEach(counters::put);
+        final ObjectNode gauges = node.putObject("gauges");
+        metrics.getGauges().forEach((name, value) -> gauges.set(name, om.valueToTree(value)));
+        final ObjectNode histograms = node.putObject("histograms");
+        metrics.getHistograms().forEach((name, histogram) -> {
+            final ObjectNode h = histograms.putObject(name);
+            h.put("count", histogram.getCount());
+            h.put("mean", histogram.getMean());
+            h.put("p50", histogram.quantile(0.5));
+            h.put("p90", histogram.quantile(0.9));
+            h.put("p99", histogram.quantile(0.99));
+            h.put("max", histogram.getMax());
+        });
+        return node.toPrettyString();
+    }
+
+}
@@ -3,30 +3,50 @@ package cz.atlascon.timereporting.resources;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
+import cz.atlascon.timereporting.cfg.Compressed;
 import cz.atlascon.timereporting.domain.User;
 import cz.atlascon.timereporting.services.DataService;
+import cz.atlascon.timereporting.services.HierarchyReport;
+import cz.atlascon.timereporting.services.ImportJob;
+import cz.atlascon.timereporting.services.LabelFilter;
+import cz.atlascon.timereporting.services.Metrics;
 import cz.atlascon.timereporting.services.Processor;
+import cz.atlascon.timereporting.services.ReportCache;
 import cz.atlascon.timereporting.services.ReportElement;
-import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import cz.atlascon.timereporting.services.TimeBucket;
+import cz.atlascon.timereporting.services.TimesheetService;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataParam;
+import org.glassfish.jersey.server.CloseableService;
 
 import javax.annotation.Resource;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.net.URI;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 @Resource
@@ -34,27 +54,75 @@ import java.util.stream.Collectors;
 @Singleton
 public class ReportResource {
 
+    private static final DateTimeFormatter WATERMARK_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+    private static final int TIMESHEET_RETRY_SECONDS = 10;
+    private static final CacheControl REVALIDATE = revalidate();
     private final ObjectMapper om = new ObjectMapper();
     private final DataService dataService;
+    private final TimesheetService timesheetService;
+    private final ReportCache reportCache;
+    private final Metrics metrics;
 
     @Inject
-    public ReportResource(final DataService dataService) {
+    public ReportResource(final DataService dataService,
+                          final TimesheetService timesheetService,
+                          final ReportCache reportCache,
+                          final Metrics metrics) {
         this.dataService = dataService;
+        this.timesheetService = timesheetService;
+        this.reportCache = reportCache;
+        this.metrics = metrics;
     }
 
     @POST
     @Path("/upload")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     public Response uploadFile(@FormDataParam("file") InputStream uploadedInputStream,
-                               @FormDataParam("file") FormDataContentDisposition fileDetail)
+                               @FormDataParam("file") FormDataContentDisposition fileDetail,
+                               @QueryParam("delta") @DefaultValue("false") boolean delta,
+                               @Context UriInfo uriInfo)
             throws Exception {
         final File tempFile = File.createTempFile("zip-upload", ".zip");
         try (FileOutputStream fos = new FileOutputStream(tempFile)) {
             ByteStreams.copy(uploadedInputStream, fos);
         }
-        dataService.importFromFile(tempFile);
-        final int logs = dataService.getProcessor().getTimeLogsCount();
-        return Response.ok("Imported " + logs + " timelogs").build();
+        // imported in background, current data is served until the import is done
+        final ImportJob job = dataService.submitImport(tempFile, delta);
+        final URI status = uriInfo.getBaseUriBuilder()
+                .path(ReportResource.class)
+                .path(ReportResource.class, "importStatus")
+                .build(job.getId());
+        return Response.accepted(jobStatus(job).put("status", status.toString()).toString())
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .location(status)
+                .build();
+    }
+
+    @GET
+    @Produces("application/json;charset=UTF-8")
+    @Path("/import/{jobId}")
+    public Response importStatus(@PathParam("jobId") long jobId) {
+        final ImportJob job = dataService.getImportJob(jobId);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(jobStatus(job).toString()).build();
+    }
+
+    private ObjectNode jobStatus(final ImportJob job) {
+        final ObjectNode node = om.createObjectNode();
+        node.put("id", job.getId());
+        node.put("delta", job.isDelta());
+        node.put("phase", job.getPhase().name());
+        node.put("submitted", job.getSubmitted().toString());
+        node.put("started", Objects.toString(job.getStarted(), null));
+        node.put("finished", Objects.toString(job.getFinished(), null));
+        node.put("rows", job.getRows());
+        node.put("rowsPerSecond", job.getRowsPerSecond());
+        final ObjectNode entries = node.putObject("entries");
+        job.getEntryRows().forEach(entries::put);
+        node.put("error", job.getError());
+        return node;
     }
 
     @GET
@@ -71,40 +139,162 @@ public class ReportResource {
         return Response.ok(dataService.getDataTimestamp().toString()).build();
     }
 
+    @GET
+    @Produces("text/plain;charset=UTF-8")
+    @Path("/getDataWatermark")
+    public Response getDataWatermark() {
+        final Instant lastUpdatedAt = dataService.hasData() ? dataService.getProcessor().getLastUpdatedAt() : null;
+        if (lastUpdatedAt == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(WATERMARK_FORMAT.format(lastUpdatedAt)).build();
+    }
+
     //  Hierarchy report
     // =================
     @GET
     @Produces("application/json;charset=UTF-8")
+    @Compressed
     @Path("/hierarchy")
-    public Response getHierarchyReport(@Context final UriInfo info) {
+    public Response getHierarchyReport(@Context final UriInfo info,
+                                       @Context final Request request,
+                                       @QueryParam("pretty") @DefaultValue("false") final boolean pretty,
+                                       @QueryParam("maxChildren") final Integer maxChildren,
+                                       @QueryParam("minValue") final Long minValue,
+                                       @QueryParam("label") final List<String> labels,
+                                       @QueryParam("notLabel") final List<String> notLabels) {
 
-        final List<ReportElement> elements = info.getQueryParameters().get("elements").stream().map(ReportElement::valueOf).collect(Collectors.toList());
+        final List<ReportElement> elements = getElements(info);
         final Instant from = getDate("from", info);
         final Instant to = getDate("to", info);
+        final LabelFilter labelFilter = LabelFilter.of(labels, notLabels);
+        if (maxChildren != null && maxChildren <= 0) {
+            throw badRequest("Invalid maxChildren " + maxChildren + ", has to be positive");
+        }
 
-        final String result = dataService.getProcessor().getHierarchyReport(from, to, elements);
+        // aggregated tree is cached regardless of formatting, json is streamed to the response
+        final Map<String, List<String>> params = Maps.filterKeys(info.getQueryParameters(), key -> !"pretty".equals(key));
+        return cached(request, info, params, processor -> {
+            // pruned after aggregation, only kept nodes are cached and written
+            return processor.getHierarchyReport(from, to, elements, labelFilter,
+                    maxChildren == null ? Integer.MAX_VALUE : maxChildren,
+                    minValue == null ? Long.MIN_VALUE : minValue,
+                    metrics.histogram("window.rows.hierarchy")::record);
+        }, HierarchyReport::weight, report -> (StreamingOutput) out -> report.write(out, pretty));
+    }
+
+    /**
+     * report from cache of current data, 304 when client has it already - etag and last modified follow data timestamp
+     */
+    private Response cached(final Request request, final UriInfo info, final Function<Processor, String> report) {
+        return cached(request, info, info.getQueryParameters(), report, String::length, result -> result);
+    }
+
+    /**
+     * @param params parameters the report depends on, cache key
+     */
+    private <T> Response cached(final Request request,
+                                final UriInfo info,
+                                final Map<String, List<String>> params,
+                                final Function<Processor, T> report,
+                                final ToIntFunction<T> weigher,
+                                final Function<T, Object> entity) {
+        // timestamp before report, so tag is never newer than the data
+        final LocalDateTime timestamp = dataService.getDataTimestamp();
+        if (timestamp == null) {
+            return Response.ok(entity.apply(report.apply(dataService.getProcessor()))).build();
+        }
+        final Date lastModified = Date.from(timestamp.atZone(ZoneId.systemDefault()).toInstant());
+        final EntityTag tag = new EntityTag(Long.toHexString(lastModified.getTime()));
+        final Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, tag);
+        if (notModified != null) {
+            return notModified.cacheControl(REVALIDATE).build();
+        }
+        final T result = reportCache.get(info.getPath(), params, report, weigher);
+        return Response.ok(entity.apply(result)).tag(tag).lastModified(lastModified).cacheControl(REVALIDATE).build();
+    }
 
-        return Response.ok(result).build();
+    private static CacheControl revalidate() {
+        // browser keeps the report but asks each time, unchanged data is answered by 304
+        final CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        return cacheControl;
     }
 
     private Instant getDate(final String key, final UriInfo info) {
-        return LocalDate.parse(info.getQueryParameters().getFirst(key)).atStartOfDay().toInstant(ZoneOffset.UTC);
+        return getDay(key, info.getQueryParameters().getFirst(key)).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    private static LocalDate getDay(final String key, final String value) {
+        if (value == null) {
+            throw badRequest("Missing " + key);
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw badRequest("Invalid " + key + " " + value);
+        }
+    }
+
+    private static void checkRange(final LocalDate from, final LocalDate to) {
+        final long days = to.toEpochDay() - from.toEpochDay();
+        if (days <= 0 || days > Processor.MAX_CALENDAR_DAYS) {
+            throw badRequest("Invalid range " + from + " - " + to + ", at most " + Processor.MAX_CALENDAR_DAYS + " days");
+        }
+    }
+
+    private static ReportElement getElement(final String key, final String value) {
+        if (value == null) {
+            throw badRequest("Missing " + key);
+        }
+        try {
+            return ReportElement.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            throw badRequest("Invalid " + key + " " + value);
+        }
+    }
+
+    private static List<ReportElement> getElements(final UriInfo info) {
+        final List<String> names = info.getQueryParameters().get("elements");
+        if (names == null || names.isEmpty()) {
+            throw badRequest("Missing elements");
+        }
+        try {
+            return names.stream().map(ReportElement::valueOf).collect(Collectors.toList());
+        } catch (IllegalArgumentException e) {
+            throw badRequest("Invalid elements " + names);
+        }
+    }
+
+    /**
+     * invalid request parameter, answered by 400 with the message
+     */
+    private static BadRequestException badRequest(final String message) {
+        return new BadRequestException(Response.status(Response.Status.BAD_REQUEST)
+                .type(MediaType.TEXT_PLAIN_TYPE)
+                .entity(message)
+                .build());
     }
 
     @GET
     @Produces("application/json;charset=UTF-8")
+    @Compressed
     @Path("/hierarchyComponents")
-    public Response getHierarchyReportElements(@Context final UriInfo info) {
+    public Response getHierarchyReportElements(@Context final UriInfo info, @Context final Request request) {
         final Instant from = getDate("from", info);
         final Instant to = getDate("to", info);
-        final ObjectNode node = om.createObjectNode();
-        for (ReportElement el : ReportElement.values()) {
-            final Set<String> components = dataService.getProcessor().getComponents(from, to, el);
-            final ArrayNode ar = om.createArrayNode();
-            components.forEach(c -> ar.add(c));
-            node.set(el.name(), ar);
-        }
-        return Response.ok(node.toPrettyString()).build();
+        return cached(request, info, processor -> {
+            final ObjectNode node = om.createObjectNode();
+            final Map<ReportElement, Set<String>> elements = processor.getComponents(from, to,
+                    metrics.histogram("window.rows.components")::record);
+            for (ReportElement el : ReportElement.values()) {
+                final Set<String> components = elements.get(el);
+                final ArrayNode ar = om.createArrayNode();
+                components.forEach(c -> ar.add(c));
+                node.set(el.name(), ar);
+            }
+            return node.toPrettyString();
+        });
     }
 
     // User reports
@@ -113,50 +303,209 @@ public class ReportResource {
     @GET
     @Produces("application/json;charset=UTF-8")
     @Path("/users")
-    public Response getUsers(@Context final UriInfo info) {
-        final List<User> users = dataService.getProcessor().getUsers();
-        final ArrayNode node = om.createArrayNode();
-        for (User user : users) {
-            node.add(om.valueToTree(user));
-        }
-        return Response.ok(node.toPrettyString()).build();
+    public Response getUsers(@Context final UriInfo info, @Context final Request request) {
+        return cached(request, info, processor -> {
+            final List<User> users = processor.getUsers();
+            final ArrayNode node = om.createArrayNode();
+            for (User user : users) {
+                node.add(om.valueToTree(user));
+            }
+            return node.toPrettyString();
+        });
     }
 
     @GET
     @Produces("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
     @Path("/timesheet")
-    public Response getUserTimesheet(@Context final UriInfo info) throws Exception {
+    public Response getUserTimesheet(@Context final UriInfo info,
+                                     @Context final CloseableService closeables,
+                                     @QueryParam("label") final List<String> labels,
+                                     @QueryParam("notLabel") final List<String> notLabels) throws Exception {
         final Instant from = getDate("from", info);
         final Instant to = getDate("to", info);
         final String dateRange = from.atOffset(ZoneOffset.UTC).toLocalDate().toString() + "_" + to.atOffset(ZoneOffset.UTC).toLocalDate().toString();
-        try (final SXSSFWorkbook timesheet = dataService.getProcessor().createTimesheet(from, to)) {
-            try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-                timesheet.write(bos);
-                bos.close();
-                return Response.ok(bos.toByteArray()).header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"timesheet_" + dateRange + ".xlsx\"").build();
-            }
+        final Processor processor = dataService.getProcessor();
+        final Optional<TimesheetService.Timesheet> timesheet = timesheetService.reserve(processor, from, to, LabelFilter.of(labels, notLabels));
+        if (timesheet.isEmpty()) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, TIMESHEET_RETRY_SECONDS).build();
         }
+        metrics.histogram("window.rows.timesheet").record(processor.getLogWindowSize(from, to));
+        // permit is released at the end of request even when body is never written (HEAD, failed filter)
+        closeables.add(timesheet.get());
+        // workbook is generated straight to response, temp files are deleted once written
+        final StreamingOutput body = timesheet.get()::writeTo;
+        return Response.ok(body).header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"timesheet_" + dateRange + ".xlsx\"").build();
     }
 
     @GET
     @Produces("application/json")
+    @Compressed
     @Path("/userCalendar/{year}/{userId}")
     public Response getUserCalendar(@PathParam("userId") int userId,
-                                    @PathParam("year") int year) throws Exception {
-        final Map<LocalDate, Processor.DayWork> work = dataService.getProcessor().createCalendar(year, userId);
-        final ArrayNode node = om.createArrayNode();
-        for (Map.Entry<LocalDate, Processor.DayWork> e : work.entrySet()) {
-            final ObjectNode on = om.createObjectNode();
-            on.put("date", e.getKey().toString());
-            on.put("minutes", e.getValue().minutes());
-            on.put("time", e.getValue().formatedTotalTime());
-            node.add(on);
+                                    @PathParam("year") int year,
+                                    @QueryParam("label") final List<String> labels,
+                                    @QueryParam("notLabel") final List<String> notLabels,
+                                    @Context final UriInfo info,
+                                    @Context final Request request) throws Exception {
+        final LabelFilter labelFilter = LabelFilter.of(labels, notLabels);
+        return cached(request, info, processor -> {
+            // unfiltered calendar reads days of the user only
+            if (!labelFilter.isAny()) {
+                final LocalDate start = LocalDate.of(year, 1, 1);
+                metrics.histogram("window.rows.calendar").record(processor.getLogWindowSize(
+                        start.atStartOfDay().toInstant(ZoneOffset.UTC), start.plusYears(1).atStartOfDay().toInstant(ZoneOffset.UTC)));
+            }
+            final Map<LocalDate, Processor.DayWork> work = processor.createCalendar(year, userId, labelFilter);
+            final ArrayNode node = om.createArrayNode();
+            for (Map.Entry<LocalDate, Processor.DayWork> e : work.entrySet()) {
+                final ObjectNode on = om.createObjectNode();
+                on.put("date", e.getKey().toString());
+                on.put("minutes", e.getValue().minutes());
+                on.put("time", e.getValue().formatedTotalTime());
+                node.add(on);
+            }
+            return node.toPrettyString();
+        });
+    }
+
+    // Top N
+    // ===================
+
+    /**
+     * top {@code n} values of {@code element} by time spent, per value of {@code parent} element when given
+     */
+    @GET
+    @Produces("application/json;charset=UTF-8")
+    @Compressed
+    @Path("/top")
+    public Response getTop(@QueryParam("element") final String elementName,
+                           @QueryParam("parent") final String parentName,
+                           @QueryParam("n") @DefaultValue("20") final int n,
+                           @QueryParam("label") final List<String> labels,
+                           @QueryParam("notLabel") final List<String> notLabels,
+                           @Context final UriInfo info,
+                           @Context final Request request) {
+        final ReportElement element = getElement("element", elementName);
+        final ReportElement parent = parentName == null ? null : getElement("parent", parentName);
+        if (n <= 0) {
+            throw badRequest("Invalid n " + n + ", has to be positive");
         }
-        return Response.ok(node.toPrettyString()).build();
+        final Instant from = getDate("from", info);
+        final Instant to = getDate("to", info);
+        final LabelFilter labelFilter = LabelFilter.of(labels, notLabels);
+        return cached(request, info, processor -> {
+            final ObjectNode node = om.createObjectNode();
+            node.put("element", element.name());
+            node.put("parent", parent == null ? null : parent.name());
+            final ArrayNode rankingsNode = node.putArray("rankings");
+            for (Processor.Ranking ranking : processor.getTop(from, to, element, parent, n, labelFilter,
+                    metrics.histogram("window.rows.top")::record)) {
+                final ObjectNode rankingNode = rankingsNode.addObject();
+                rankingNode.put("parent", ranking.parent());
+                rankingNode.put("time", ranking.parentTime());
+                final ArrayNode topNode = rankingNode.putArray("top");
+                for (int i = 0; i < ranking.names().length; i++) {
+                    topNode.addObject().put("name", ranking.names()[i]).put("time", ranking.times()[i]);
+                }
+            }
+            return node.toString();
+        });
+    }
+
+    // Time series
+    // ===================
+
+    /**
+     * seconds per value of {@code element} in day, week, month or quarter buckets of [from, to)
+     */
+    @GET
+    @Produces("application/json;charset=UTF-8")
+    @Compressed
+    @Path("/series")
+    public Response getTimeSeries(@QueryParam("element") final String elementName,
+                                  @QueryParam("bucket") @DefaultValue("WEEK") final TimeBucket bucket,
+                                  @QueryParam("from") final String from,
+                                  @QueryParam("to") final String to,
+                                  @Context final UriInfo info,
+                                  @Context final Request request) {
+        final ReportElement element = getElement("element", elementName);
+        final LocalDate fromDay = getDay("from", from);
+        final LocalDate toDay = getDay("to", to);
+        checkRange(fromDay, toDay);
+        return cached(request, info, processor -> {
+            final Processor.TimeSeries series = processor.createTimeSeries(element, fromDay, toDay, bucket);
+            final ObjectNode node = om.createObjectNode();
+            node.put("element", element.name());
+            node.put("bucket", bucket.name());
+            final ArrayNode startsNode = node.putArray("starts");
+            Arrays.stream(series.starts()).map(LocalDate::toString).forEach(startsNode::add);
+            final ArrayNode seriesNode = node.putArray("series");
+            for (int i = 0; i < series.names().length; i++) {
+                final ObjectNode one = seriesNode.addObject();
+                one.put("name", series.names()[i]);
+                final ArrayNode values = one.putArray("values");
+                Arrays.stream(series.values()[i]).forEach(values::add);
+            }
+            return node.toString();
+        });
     }
 
     // Calendar report
     // ===================
 
+    /**
+     * calendars of many users at once, days of {@code year} or [from, to), {@code users} is comma separated ids or "all"
+     */
+    @GET
+    @Produces("application/json")
+    @Compressed
+    @Path("/calendars")
+    public Response getCalendars(@QueryParam("year") final Integer year,
+                                 @QueryParam("from") final String from,
+                                 @QueryParam("to") final String to,
+                                 @QueryParam("users") @DefaultValue("all") final String users,
+                                 @QueryParam("label") final List<String> labels,
+                                 @QueryParam("notLabel") final List<String> notLabels) {
+        final LocalDate fromDay;
+        final LocalDate toDay;
+        if (year != null) {
+            if (year <= LocalDate.MIN.getYear() || year >= LocalDate.MAX.getYear()) {
+                throw badRequest("Invalid year " + year);
+            }
+            fromDay = LocalDate.of(year, 1, 1);
+            toDay = fromDay.plusYears(1);
+        } else {
+            fromDay = getDay("from", from);
+            toDay = getDay("to", to);
+        }
+        checkRange(fromDay, toDay);
+        final int[] userIds;
+        try {
+            userIds = users.equals("all") ? null : Splitter.on(',').trimResults().omitEmptyStrings()
+                    .splitToStream(users).mapToInt(Integer::parseInt).toArray();
+        } catch (NumberFormatException e) {
+            throw badRequest("Invalid users " + users);
+        }
+        final Processor processor = dataService.getProcessor();
+        final LabelFilter labelFilter = LabelFilter.of(labels, notLabels);
+        if (!labelFilter.isAny()) {
+            metrics.histogram("window.rows.calendars").record(processor.getLogWindowSize(
+                    fromDay.atStartOfDay().toInstant(ZoneOffset.UTC), toDay.atStartOfDay().toInstant(ZoneOffset.UTC)));
+        }
+        final Processor.CalendarMatrix calendars = processor.createCalendars(fromDay, toDay, userIds, labelFilter);
+        final ObjectNode node = om.createObjectNode();
+        node.put("from", calendars.from().toString());
+        node.put("days", toDay.toEpochDay() - fromDay.toEpochDay());
+        final ArrayNode userNode = node.putArray("users");
+        Arrays.stream(calendars.users()).forEach(userNode::add);
+        final ArrayNode minutesNode = node.putArray("minutes");
+        for (int[] userMinutes : calendars.minutes()) {
+            final ArrayNode row = minutesNode.addArray();
+            Arrays.stream(userMinutes).forEach(row::add);
+        }
+        // compact, matrix of a team is large
+        return Response.ok(node.toString()).build();
+    }
+
 
 }
@@ -0,0 +1,84 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * fixed width primitive values appended to a file of their own through a direct chunk buffer and mapped back
+ * read only when finished, values are in native byte order; one column is one mapping, so at most 2GB
+ */
+class ColumnFile implements Closeable {
+
+    private static final int CHUNK = 1 << 16;
+
+    private final Path file;
+    private final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK).order(ByteOrder.nativeOrder());
+    private FileChannel channel;
+
+    ColumnFile(final Path file) {
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * chunk with room for at least {@code bytes} more bytes
+     */
+    ByteBuffer chunk(final int bytes) {
+        Preconditions.checkState(channel != null, "Column %s already mapped", file);
+        if (chunk.remaining() < bytes) {
+            flush();
+        }
+        return chunk;
+    }
+
+    private void flush() {
+        chunk.flip();
+        try {
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunk.clear();
+    }
+
+    /**
+     * finish writing and map the whole column read only
+     */
+    ByteBuffer map() {
+        flush();
+        try (FileChannel read = channel) {
+            final long size = read.size();
+            Preconditions.checkState(size <= Integer.MAX_VALUE, "Column %s over 2GB", file);
+            channel = null;
+            return read.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * abandon unfinished column
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+}
@@ -1,24 +1,52 @@
 package cz.atlascon.timereporting.services;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import cz.atlascon.timereporting.Parser;
-import cz.atlascon.timereporting.domain.*;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Supplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -26,18 +54,163 @@ import java.util.zip.ZipFile;
 public class DataService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DataService.class);
+    private static final int IMPORT_THREADS = Math.min(8, Runtime.getRuntime().availableProcessors());
+    private static final int MAX_JOBS = 32;
+    private static final int PROGRESS_ROWS = 1 << 14;
+    // removes storage of replaced data
+    private static final Cleaner CLEANER = Cleaner.create();
 
     private final AtomicReference<Processor> processorRef = new AtomicReference<>(null);
     private final AtomicReference<LocalDateTime> lastProcessed = new AtomicReference<>(null);
+    private final AtomicLong version = new AtomicLong();
+    private final List<LongConsumer> versionListeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService importExecutor = Executors.newFixedThreadPool(IMPORT_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("csv-import-%d").setDaemon(true).build());
+    // single writer, import jobs run one after another
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("import-job-%d").setDaemon(true).build());
+    private final AtomicLong jobIds = new AtomicLong();
+    private final Map<Long, ImportJob> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, ImportJob> eldest) {
+            return size() > MAX_JOBS && eldest.getValue().isFinished();
+        }
+    };
+    private final AtomicInteger generations = new AtomicInteger();
+    private final Path snapshotFile;
+    private final Path storageDir;
+    private final int parallelThreshold;
+    private final Metrics metrics;
+
+    /**
+     * @param storage {@code heap} keeps data on java heap, {@code mapped} moves time logs and large tables
+     *                to memory mapped files in {@code storageDir}
+     * @param parallelThreshold hierarchy reports over at least this many rows are aggregated in parallel,
+     *                          0 or a single core common pool keeps aggregation on one thread
+     */
+    @Inject
+    public DataService(@Value("${timereporting.snapshot.file:}") final String snapshotFile,
+                       @Value("${timereporting.storage:heap}") final String storage,
+                       @Value("${timereporting.storage.dir:data/storage}") final String storageDir,
+                       @Value("${timereporting.parallel.threshold:0}") final int parallelThreshold,
+                       final Metrics metrics) {
+        Preconditions.checkArgument(storage.equals("heap") || storage.equals("mapped"), "Unknown storage %s", storage);
+        this.snapshotFile = snapshotFile.isBlank() ? null : Paths.get(snapshotFile);
+        this.storageDir = storage.equals("mapped") ? Paths.get(storageDir) : null;
+        // parallel chunks were slower than one thread in all measurements, see README
+        this.parallelThreshold = parallelThreshold <= 0 || ForkJoinPool.getCommonPoolParallelism() <= 1
+                ? Integer.MAX_VALUE : parallelThreshold;
+        this.metrics = metrics;
+        metrics.gauge("data.timelogs", () -> hasData() ? getProcessor().getTimeLogsCount() : 0);
+        // estimated from sizes of the data structures, heap in use also holds previous data still being read
+        metrics.gauge("data.heap.bytes", () -> {
+            final Processor processor = getProcessor();
+            return processor == null ? 0 : processor.getFootprint() - processor.getMappedFootprint();
+        });
+        metrics.gauge("data.mapped.bytes", () -> hasData() ? getProcessor().getMappedFootprint() : 0);
+        metrics.gauge("data.snapshot.bytes", () -> this.snapshotFile == null ? 0 : this.snapshotFile.toFile().length());
+    }
 
+    /**
+     * current data snapshot, immutable - callers keep using it while imports publish newer ones
+     */
     public Processor getProcessor() {
         return processorRef.get();
     }
 
-//    @PostConstruct
-//    public void setup() throws Exception {
-//        importFromFile(new File("/tmp/export.zip"));
-//    }
+    /**
+     * restore data imported before restart, corrupted or outdated snapshot leaves the service empty
+     */
+    @PostConstruct
+    public void setup() {
+        removeStaleStorage();
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return;
+        }
+        Storage storage = Storage.HEAP;
+        try {
+            final long start = System.currentTimeMillis();
+            storage = newStorage();
+            final ExportData data = SnapshotFile.read(snapshotFile, storage);
+            replace(new Processor(data, storage, parallelThreshold), LocalDateTime.ofInstant(Files.getLastModifiedTime(snapshotFile).toInstant(), ZoneId.systemDefault()));
+            LOGGER.info("Loaded {} time logs from snapshot {} in {} ms", data.logs().size(), snapshotFile, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            discard(storage);
+            LOGGER.warn("Unable to load snapshot {}, starting without data", snapshotFile, e);
+        }
+    }
+
+    private void writeSnapshot(final Processor processor) {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            SnapshotFile.write(processor, snapshotFile);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write snapshot {}", snapshotFile, e);
+        }
+    }
+
+    /**
+     * each import is written to its own generation directory, so readers of previous data are not affected
+     */
+    private Storage newStorage() throws IOException {
+        if (storageDir == null) {
+            return Storage.HEAP;
+        }
+        return Storage.mapped(storageDir.resolve("gen-" + System.currentTimeMillis() + "-" + generations.incrementAndGet()));
+    }
+
+    /**
+     * remove generation of failed import
+     */
+    private static void discard(final Storage storage) {
+        storage.closeWriters();
+        if (storage.dir() != null) {
+            delete(storage.dir());
+        }
+    }
+
+    /**
+     * processor, version and timestamp are set in this order, readers go the opposite way,
+     * so result is never older than version or timestamp it is tagged with
+     */
+    private void replace(final Processor processor, final LocalDateTime timestamp) {
+        final Processor previous = processorRef.getAndSet(processor);
+        final long current = version.incrementAndGet();
+        lastProcessed.set(timestamp);
+        versionListeners.forEach(listener -> listener.accept(current));
+        if (previous != null && previous.getStorageDir() != null) {
+            // readers may still hold previous data, files go once it is unreachable, leftovers on next startup
+            final Path dir = previous.getStorageDir();
+            CLEANER.register(previous, () -> delete(dir));
+        }
+    }
+
+    private void removeStaleStorage() {
+        if (storageDir == null || !Files.isDirectory(storageDir)) {
+            return;
+        }
+        try (Stream<Path> dirs = Files.list(storageDir)) {
+            dirs.filter(dir -> dir.getFileName().toString().startsWith("gen-")).forEach(DataService::delete);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to list storage {}", storageDir, e);
+        }
+    }
+
+    private static void delete(final Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete {}", dir, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        importExecutor.shutdownNow();
+    }
 
     public boolean hasData() {
         return processorRef.get() != null;
@@ -47,41 +220,216 @@ public class DataService {
         return lastProcessed.get();
     }
 
+    /**
+     * incremented on every data swap, read it before {@link #getProcessor()} when caching results per version
+     */
+    public long getDataVersion() {
+        return version.get();
+    }
+
+    /**
+     * listener is called with new version after each data swap
+     */
+    public void addVersionListener(final LongConsumer listener) {
+        versionListeners.add(listener);
+    }
+
+    /**
+     * queue import of uploaded file, file is deleted once imported; full import supersedes jobs still waiting
+     * in queue as it would replace their data anyway
+     */
+    public ImportJob submitImport(final File file, final boolean delta) {
+        final ImportJob job = new ImportJob(jobIds.incrementAndGet(), delta);
+        synchronized (jobs) {
+            if (!delta) {
+                jobs.values().stream()
+                        .filter(queued -> queued.getPhase() == ImportJob.Phase.QUEUED)
+                        .forEach(queued -> queued.finish(ImportJob.Phase.SUPERSEDED, "Superseded by import " + job.getId()));
+            }
+            jobs.put(job.getId(), job);
+        }
+        jobExecutor.execute(() -> runJob(job, file));
+        return job;
+    }
+
+    public ImportJob getImportJob(final long id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    private void runJob(final ImportJob job, final File file) {
+        try {
+            synchronized (jobs) {
+                if (job.isFinished()) {
+                    return;
+                }
+                job.start();
+            }
+            if (job.isDelta()) {
+                importDelta(file, job);
+            } else {
+                importFromFile(file, job);
+            }
+            LOGGER.info("Import {} done in {} ms", job.getId(), job.getFinished().toEpochMilli() - job.getStarted().toEpochMilli());
+        } catch (Exception e) {
+            LOGGER.warn("Import {} failed", job.getId(), e);
+            job.finish(ImportJob.Phase.FAILED, e.toString());
+        } finally {
+            if (!file.delete()) {
+                LOGGER.warn("Unable to delete {}", file);
+            }
+        }
+    }
+
     public void importFromFile(File file) throws Exception {
-        final Parser parser = new Parser();
+        final ImportJob job = new ImportJob(0, false);
+        job.start();
+        importFromFile(file, job);
+    }
+
+    /**
+     * merge export of rows updated since last import into current data, missing zip entries mean no changes
+     */
+    public void importDelta(File file) throws Exception {
+        final ImportJob job = new ImportJob(0, true);
+        job.start();
+        importDelta(file, job);
+    }
+
+    private synchronized void importFromFile(final File file, final ImportJob job) throws Exception {
+        final Storage storage = newStorage();
+        final Processor processor;
+        try {
+            final ExportData data = parseExport(file, true, job, storage);
+            LOGGER.info("Parsed {} time logs", data.logs().size());
+            job.phase(ImportJob.Phase.BUILDING);
+            processor = new Processor(data, storage, parallelThreshold);
+        } catch (Exception e) {
+            discard(storage);
+            throw e;
+        }
+        job.phase(ImportJob.Phase.STORING);
+        swap(processor);
+        done(job);
+    }
+
+    private synchronized void importDelta(final File file, final ImportJob job) throws Exception {
+        final Processor current = processorRef.get();
+        Preconditions.checkState(current != null, "No data to merge delta into, full import required");
+        // delta is small, parsed on heap and merged into new generation
+        final ExportData delta = parseExport(file, false, job, Storage.HEAP);
+        LOGGER.info("Parsed {} updated time logs", delta.logs().size());
+        job.phase(ImportJob.Phase.BUILDING);
+        final Storage storage = newStorage();
+        final Processor processor;
+        try {
+            processor = current.merge(delta, storage);
+        } catch (Exception e) {
+            discard(storage);
+            throw e;
+        }
+        job.phase(ImportJob.Phase.STORING);
+        swap(processor);
+        done(job);
+    }
+
+    private void swap(final Processor processor) {
+        // readers keep previous snapshot until here
+        replace(processor, LocalDateTime.now());
+        writeSnapshot(processor);
+    }
+
+    private void done(final ImportJob job) {
+        job.finish(ImportJob.Phase.DONE, null);
+        final String kind = job.isDelta() ? "import.delta." : "import.full.";
+        job.getPhaseMillis().forEach((phase, millis) ->
+                metrics.histogram(kind + phase.name().toLowerCase(Locale.ROOT) + ".millis").record(millis));
+        job.getEntryRows().forEach((entry, rows) -> metrics.count("import.rows." + entry, rows));
+    }
+
+    private ExportData parseExport(final File file, final boolean complete, final ImportJob job, final Storage storage) throws Exception {
+        // each entry is decoded on its own thread straight into its own structure
+        final ExportData data = ExportData.empty(storage);
+        // set by first failed entry, the others stop at their next row
+        final AtomicBoolean failed = new AtomicBoolean();
         try (final ZipFile zip = new ZipFile(file)) {
-            List<TimeLog> logs = parse(zip, "timelogs.csv", parser, parser::parseTimeLog);
-            List<Namespace> namespaces = parse(zip, "namespaces.csv", parser, parser::parseGroup);
-            List<Label> labels = parse(zip, "labels.csv", parser, parser::parseLabel);
-            List<User> users = parse(zip, "users.csv", parser, parser::parseUser);
-            List<Project> projects = parse(zip, "projects.csv", parser, parser::parseProject);
-            List<Issue> issues = parse(zip, "issues.csv", parser, parser::parseIssue);
-            List<MergeRequest> mergeRequests = parse(zip, "merge_requests.csv", parser, parser::parseMergeRequest);
-            List<LabelLink> labelLinks = parse(zip, "label_links.csv", parser, parser::parseLabelLink);
-            LOGGER.info("Parsed {} time logs", logs.size());
-            processorRef.set(new Processor(logs, namespaces, labels, users, projects, issues, mergeRequests, labelLinks));
-            lastProcessed.set(LocalDateTime.now());
-        }
-    }
-
-    private static <E> List<E> parse(final ZipFile zip,
-                                     final String entryName,
-                                     final Parser parser,
-                                     final Supplier<E> parse) throws Exception {
-        final List<E> list = new ArrayList<>();
+            await(List.of(
+                    parse(zip, "timelogs.csv", complete, job, failed, parser -> parser.timeLogs(data.logs())),
+                    parse(zip, "namespaces.csv", complete, job, failed, parser -> parser.groups(n -> data.namespaces().put(n.id(), n))),
+                    parse(zip, "labels.csv", complete, job, failed, parser -> parser.labels(l -> data.labels().put(l.id(), l))),
+                    parse(zip, "users.csv", complete, job, failed, parser -> parser.users(u -> data.users().put(u.id(), u))),
+                    parse(zip, "projects.csv", complete, job, failed, parser -> parser.projects(p -> data.projects().put(p.id(), p))),
+                    parse(zip, "issues.csv", complete, job, failed, parser -> parser.issues(i -> data.issues().put(i.id(), i))),
+                    parse(zip, "merge_requests.csv", complete, job, failed, parser -> parser.mergeRequests(mr -> data.mergeRequests().put(mr.id(), mr))),
+                    parse(zip, "label_links.csv", complete, job, failed, parser -> parser.labelLinks(data.labelLinks()::add))));
+        }
+        return data;
+    }
+
+    /**
+     * wait for all entries - zip is closed afterwards, so none may still be reading it - then throw error
+     * of the first failed entry; entries stopped because of it are not reported
+     */
+    private static void await(final List<CompletableFuture<Integer>> entries) throws Exception {
+        CompletableFuture.allOf(entries.toArray(new CompletableFuture<?>[0])).handle((rows, e) -> null).join();
+        Throwable first = null;
+        for (CompletableFuture<Integer> entry : entries) {
+            try {
+                entry.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                if (first == null || first instanceof CancellationException) {
+                    first = cause;
+                }
+            }
+        }
+        if (first != null) {
+            Throwables.propagateIfPossible(first, Exception.class);
+            throw new ExecutionException(first);
+        }
+    }
+
+    private CompletableFuture<Integer> parse(final ZipFile zip,
+                                             final String entryName,
+                                             final boolean required,
+                                             final ImportJob job,
+                                             final AtomicBoolean failed,
+                                             final Function<Parser, Consumer<CSVRecord>> reader) {
         final ZipEntry entry = zip.getEntry(entryName);
-        try (InputStream in = zip.getInputStream(entry);
-             InputStreamReader reader = new InputStreamReader(in);) {
-            final CSVParser csv = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader);
-            final Iterator<CSVRecord> it = csv.iterator();
-            while (it.hasNext()) {
-                final CSVRecord rec = it.next();
-                parser.setRecord(rec);
-                E itm = parse.get();
-                list.add(itm);
+        if (entry == null) {
+            if (required) {
+                failed.set(true);
+                return CompletableFuture.failedFuture(new IllegalArgumentException("Missing " + entryName + " in export"));
             }
+            return CompletableFuture.completedFuture(0);
         }
-        return list;
+        return CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = zip.getInputStream(entry);
+                 InputStreamReader streamReader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                final CSVParser csv = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(streamReader);
+                final Consumer<CSVRecord> sink = reader.apply(new Parser(csv.getHeaderMap()));
+                int rows = 0;
+                for (CSVRecord rec : csv) {
+                    if (failed.get()) {
+                        throw new CancellationException("Import failed, " + entryName + " stopped");
+                    }
+                    sink.accept(rec);
+                    if (++rows % PROGRESS_ROWS == 0) {
+                        job.parsed(entryName, rows);
+                    }
+                }
+                job.parsed(entryName, rows);
+                LOGGER.info("Parsed {} rows of {}", rows, entryName);
+                return rows;
+            } catch (IOException e) {
+                failed.set(true);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                failed.set(true);
+                throw e;
+            }
+        }, importExecutor);
     }
 
 }
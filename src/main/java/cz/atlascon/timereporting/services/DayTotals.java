@@ -0,0 +1,121 @@
+package cz.atlascon.timereporting.services;
+
+import java.util.Arrays;
+
+/**
+ * running sums of time spent per value of one element over days; days of one value are adjacent and sorted,
+ * so time of a value in any range of days is difference of two running sums found by binary search
+ */
+public class DayTotals {
+
+    // value slot is ordinal + 1, slot 0 is for missing value; days of slot v are rows [offsets[v], offsets[v + 1])
+    private final int[] offsets;
+    private final int[] day;
+    // time spent by the value up to and including day of the row
+    private final long[] cumulative;
+
+    /**
+     * @param values dictionary size of the element
+     */
+    public DayTotals(final Rollup rollup, final ReportElement element, final int values) {
+        final int[] rowSlots = new int[rollup.size()];
+        for (int row = 0; row < rollup.size(); row++) {
+            rowSlots[row] = slot(rollup.ordinal(element, row));
+        }
+        final int[] start = new int[values + 2];
+        for (int slot : rowSlots) {
+            start[slot + 1]++;
+        }
+        for (int slot = 0; slot <= values; slot++) {
+            start[slot + 1] += start[slot];
+        }
+        // rollup is sorted by day, stable scatter keeps days of each value sorted
+        final int[] next = Arrays.copyOf(start, values + 1);
+        final int[] rows = new int[rollup.size()];
+        for (int row = 0; row < rollup.size(); row++) {
+            rows[next[rowSlots[row]]++] = row;
+        }
+        // one row per (value, day), sums running over days of the value
+        this.offsets = new int[values + 2];
+        final int[] days = new int[rows.length];
+        final long[] sums = new long[rows.length];
+        int size = 0;
+        for (int slot = 0; slot <= values; slot++) {
+            offsets[slot] = size;
+            for (int r = start[slot]; r < start[slot + 1]; r++) {
+                final int rowDay = Math.toIntExact(rollup.day(rows[r]));
+                if (size == offsets[slot] || days[size - 1] != rowDay) {
+                    sums[size] = size == offsets[slot] ? 0 : sums[size - 1];
+                    days[size++] = rowDay;
+                }
+                sums[size - 1] += rollup.timeSpent(rows[r]);
+            }
+        }
+        offsets[values + 1] = size;
+        this.day = Arrays.copyOf(days, size);
+        this.cumulative = Arrays.copyOf(sums, size);
+    }
+
+    /**
+     * value slot of dictionary ordinal
+     */
+    public static int slot(final int ordinal) {
+        return ordinal == TimeLogStore.NONE ? 0 : ordinal + 1;
+    }
+
+    /**
+     * number of value slots, dictionary size + 1
+     */
+    public int slots() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * approximate heap size in bytes
+     */
+    public long weight() {
+        return 4L * (offsets.length + day.length) + 8L * cumulative.length;
+    }
+
+    /**
+     * dictionary ordinal of value slot
+     */
+    public static int ordinal(final int slot) {
+        return slot == 0 ? TimeLogStore.NONE : slot - 1;
+    }
+
+    /**
+     * time spent by value in slot between consecutive bounds, {@code bounds.length - 1} sums
+     */
+    public long[] sums(final int slot, final long[] bounds) {
+        final long[] sums = new long[bounds.length - 1];
+        if (offsets[slot] == offsets[slot + 1]) {
+            return sums;
+        }
+        long previous = before(slot, bounds[0]);
+        for (int i = 1; i < bounds.length; i++) {
+            final long current = before(slot, bounds[i]);
+            sums[i - 1] = current - previous;
+            previous = current;
+        }
+        return sums;
+    }
+
+    /**
+     * time spent by value in slot before given day
+     */
+    private long before(final int slot, final long epochDay) {
+        int low = offsets[slot];
+        int high = offsets[slot + 1];
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (day[mid] < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == offsets[slot] ? 0 : cumulative[low - 1];
+    }
+
+}
@@ -0,0 +1,62 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * distinct names of one dimension, ordinal = position in sorted name order
+ */
+public class Dictionary {
+
+    private final String[] names;
+    private final Map<String, Integer> ordinals;
+
+    public Dictionary(final Collection<String> names) {
+        final TreeSet<String> sorted = new TreeSet<>();
+        names.stream().filter(Objects::nonNull).forEach(sorted::add);
+        this.names = sorted.toArray(new String[0]);
+        this.ordinals = Maps.newHashMapWithExpectedSize(this.names.length);
+        for (int i = 0; i < this.names.length; i++) {
+            ordinals.put(this.names[i], i);
+        }
+    }
+
+    public int ordinal(final String name) {
+        if (name == null) {
+            return TimeLogStore.NONE;
+        }
+        final Integer ordinal = ordinals.get(name);
+        Preconditions.checkArgument(ordinal != null, "Unknown name %s", name);
+        return ordinal;
+    }
+
+    public boolean contains(final String name) {
+        return ordinals.containsKey(name);
+    }
+
+    public String name(final int ordinal) {
+        return ordinal == TimeLogStore.NONE ? null : names[ordinal];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * approximate heap size in bytes, latin names take a byte per char, their strings, map entries
+     * and boxed ordinals about a hundred more
+     */
+    public long weight() {
+        long weight = 0;
+        for (String name : names) {
+            weight += name.length() + 100;
+        }
+        return weight;
+    }
+
+}
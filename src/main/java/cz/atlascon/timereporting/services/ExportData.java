@@ -0,0 +1,40 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import cz.atlascon.timereporting.domain.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * parsed content of one GitLab export zip - a full snapshot or a delta of rows updated since last import
+ */
+public record ExportData(TimeLogStore.Builder logs,
+                         Map<Integer, Namespace> namespaces,
+                         Map<Integer, Label> labels,
+                         Map<Integer, User> users,
+                         Map<Integer, Project> projects,
+                         Map<Integer, Issue> issues,
+                         Map<Integer, MergeRequest> mergeRequests,
+                         List<LabelLink> labelLinks) {
+
+    public static ExportData empty() {
+        return empty(Storage.HEAP);
+    }
+
+    /**
+     * time logs and large tables are parsed straight into given storage, small tables are on heap
+     */
+    public static ExportData empty(final Storage storage) {
+        return new ExportData(new TimeLogStore.Builder(storage, 1 << 16),
+                Maps.newHashMap(),
+                Maps.newHashMap(),
+                Maps.newHashMap(),
+                storage.table("projects", SnapshotFile.PROJECTS),
+                storage.table("issues", SnapshotFile.ISSUES),
+                storage.table("merge_requests", SnapshotFile.MERGE_REQUESTS),
+                Lists.newArrayList());
+    }
+
+}
@@ -0,0 +1,83 @@
+package cz.atlascon.timereporting.services;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * aggregated sunburst tree, immutable - written as d3 flare json straight to output stream,
+ * children of node n are nodes {@code children[firstChild[n]] .. children[firstChild[n + 1] - 1]}, root is 0;
+ * node with {@link #OTHER} ordinal is a leaf holding folded children of its parent on any level
+ */
+public class HierarchyReport {
+
+    /**
+     * ordinal of "other" node
+     */
+    public static final int OTHER = Integer.MAX_VALUE;
+    private static final String OTHER_NAME = "other";
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final List<IntFunction<String>> levelNames;
+    private final int[] ordinal;
+    private final long[] value;
+    private final int[] children;
+    private final int[] firstChild;
+
+    HierarchyReport(final List<IntFunction<String>> levelNames,
+                    final int[] ordinal,
+                    final long[] value,
+                    final int[] children,
+                    final int[] firstChild) {
+        this.levelNames = levelNames;
+        this.ordinal = ordinal;
+        this.value = value;
+        this.children = children;
+        this.firstChild = firstChild;
+    }
+
+    /**
+     * approximate heap size in bytes
+     */
+    public int weight() {
+        return 4 * (ordinal.length + children.length + firstChild.length) + 8 * value.length;
+    }
+
+    public void write(final OutputStream out, final boolean pretty) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (pretty) {
+                json.useDefaultPrettyPrinter();
+            }
+            json.writeStartObject();
+            json.writeStringField("name", "flare");
+            writeChildren(json, 0, 0);
+            json.writeEndObject();
+        }
+    }
+
+    private void writeChildren(final JsonGenerator json, final int node, final int level) throws IOException {
+        json.writeArrayFieldStart("children");
+        final IntFunction<String> names = levelNames.get(level);
+        final boolean leaf = level == levelNames.size() - 1;
+        for (int i = firstChild[node]; i < firstChild[node + 1]; i++) {
+            final int child = children[i];
+            json.writeStartObject();
+            final boolean other = ordinal[child] == OTHER;
+            json.writeStringField("name", other ? OTHER_NAME : names.apply(ordinal[child]));
+            if (leaf || other) {
+                json.writeNumberField("value", value[child]);
+            } else {
+                writeChildren(json, child, level + 1);
+            }
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+}
@@ -1,69 +1,247 @@
 package cz.atlascon.timereporting.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
 
+/**
+ * sums time over paths of dictionary ordinals, one ordinal per level; nodes of the trie are found in flat
+ * open addressing table keyed by (parent node, ordinal), names are looked up only when writing json,
+ * see {@link HierarchyReport}
+ */
 public class HierarchyReportBuilder {
 
-    private final Map map = Maps.newHashMap();
-    private final ObjectMapper om = new ObjectMapper();
+    private static final int ROOT = 0;
+
+    private final List<IntFunction<String>> levelNames;
     private final int depth;
+    // nodes, root is 0
+    private int nodes = 1;
+    private int[] parent = new int[64];
+    private int[] ordinal = new int[64];
+    private int[] value = new int[64];
+    // (parent, ordinal) -> node, 0 = empty slot
+    private long[] keys = new long[128];
+    private int[] slots = new int[128];
 
-    public HierarchyReportBuilder(final int depth) {
-        Preconditions.checkArgument(depth > 0);
-        this.depth = depth;
+    /**
+     * @param levelNames name of ordinal on each level
+     */
+    public HierarchyReportBuilder(final List<IntFunction<String>> levelNames) {
+        Preconditions.checkArgument(!levelNames.isEmpty());
+        this.levelNames = levelNames;
+        this.depth = levelNames.size();
     }
 
-    public void addTime(int time, String... hierarchy) {
-        Preconditions.checkNotNull(hierarchy);
-        Preconditions.checkArgument(hierarchy.length == depth);
-        Map current = map;
-        for (int i = 0; i < hierarchy.length; i++) {
+    public void addTime(final int time, final int[] path) {
+        Preconditions.checkArgument(path.length == depth);
+        int node = ROOT;
+        for (int ordinal : path) {
+            node = child(node, ordinal);
+        }
+        value[node] += time;
+    }
 
-            if (i == hierarchy.length - 1) {
-                // leaf
-                final AtomicInteger cnt = (AtomicInteger) current.computeIfAbsent(hierarchy[i], h -> new AtomicInteger());
-                cnt.addAndGet(time);
-            } else {
-                // not leaf
-                current = (Map) current.computeIfAbsent(hierarchy[i], h -> new HashMap<>());
+    /**
+     * add sums of other builder with the same levels, other builder is left untouched
+     */
+    public HierarchyReportBuilder merge(final HierarchyReportBuilder other) {
+        Preconditions.checkArgument(other.depth == depth);
+        // parents are created before children, so mapping of parent is known when child is reached
+        final int[] mapped = new int[other.nodes];
+        mapped[ROOT] = ROOT;
+        for (int node = 1; node < other.nodes; node++) {
+            mapped[node] = child(mapped[other.parent[node]], other.ordinal[node]);
+            value[mapped[node]] += other.value[node];
+        }
+        return this;
+    }
+
+    private int child(final int parentNode, final int childOrdinal) {
+        final long key = ((long) parentNode << 32) | (childOrdinal & 0xffffffffL);
+        final int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != 0) {
+            if (keys[slot] == key) {
+                return slots[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        final int node = addNode(parentNode, childOrdinal);
+        keys[slot] = key;
+        slots[slot] = node;
+        if (nodes * 2 > slots.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    private static int hash(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int addNode(final int parentNode, final int nodeOrdinal) {
+        if (nodes == parent.length) {
+            parent = Arrays.copyOf(parent, nodes * 2);
+            ordinal = Arrays.copyOf(ordinal, nodes * 2);
+            value = Arrays.copyOf(value, nodes * 2);
+        }
+        parent[nodes] = parentNode;
+        ordinal[nodes] = nodeOrdinal;
+        return nodes++;
+    }
+
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final int[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new int[oldSlots.length * 2];
+        final int mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                slots[slot] = oldSlots[i];
             }
         }
     }
 
-    public String build() {
-        final ObjectNode root = om.createObjectNode();
-        root.put("name", "flare");
-        final ArrayNode ar = om.createArrayNode();
-        root.set("children", ar);
-        appendNodes(ar, map);
-        return root.toPrettyString();
+    /**
+     * finished report, builder must not be used afterwards
+     */
+    public HierarchyReport build() {
+        return build(Integer.MAX_VALUE, Long.MIN_VALUE);
     }
 
-    private void appendNodes(final ArrayNode ar, final Map m) {
-        m.forEach((k, v) -> {
-            // set name
-            final ObjectNode on = om.createObjectNode();
-            on.put("name", (String) k);
-            if (v instanceof AtomicInteger) {
-                // leaf
-                on.put("value", ((AtomicInteger) v).get());
+    /**
+     * finished report with at most {@code maxChildren} children of each node having at least {@code minValue}
+     * total time, remaining children are folded into "other" leaf; builder must not be used afterwards
+     */
+    public HierarchyReport build(final int maxChildren, final long minValue) {
+        Preconditions.checkArgument(maxChildren > 0, "maxChildren must be positive, got %s", maxChildren);
+        // children grouped by parent, each group sorted by ordinal i.e. by name; (ordinal, node) packed to one long
+        final int[] firstChild = new int[nodes + 1];
+        for (int node = 1; node < nodes; node++) {
+            firstChild[parent[node] + 1]++;
+        }
+        for (int node = 0; node < nodes; node++) {
+            firstChild[node + 1] += firstChild[node];
+        }
+        final int[] next = Arrays.copyOf(firstChild, nodes);
+        final long[] sorted = new long[nodes - 1];
+        for (int node = 1; node < nodes; node++) {
+            sorted[next[parent[node]]++] = ((ordinal[node] - (long) TimeLogStore.NONE) << 31) | node;
+        }
+        final int[] children = new int[nodes - 1];
+        for (int node = 0; node < nodes; node++) {
+            Arrays.sort(sorted, firstChild[node], firstChild[node + 1]);
+        }
+        for (int i = 0; i < children.length; i++) {
+            children[i] = (int) (sorted[i] & Integer.MAX_VALUE);
+        }
+        final long[] total = new long[nodes];
+        for (int node = 0; node < nodes; node++) {
+            total[node] = value[node];
+        }
+        if (maxChildren == Integer.MAX_VALUE && minValue == Long.MIN_VALUE) {
+            return new HierarchyReport(levelNames, Arrays.copyOf(ordinal, nodes), total, children, firstChild);
+        }
+        // children are created after parents, so totals of subtrees are summed bottom up in reverse order
+        for (int node = nodes - 1; node > 0; node--) {
+            total[parent[node]] += total[node];
+        }
+        return pruned(children, firstChild, total, maxChildren, minValue);
+    }
+
+    /**
+     * kept nodes renumbered breadth first, so children of each kept node stay adjacent
+     */
+    private HierarchyReport pruned(final int[] children,
+                                   final int[] firstChild,
+                                   final long[] total,
+                                   final int maxChildren,
+                                   final long minValue) {
+        final int[] source = new int[nodes + 1];
+        final int[] level = new int[nodes + 1];
+        final int[] keptOrdinal = new int[nodes + 1];
+        final long[] keptValue = new long[nodes + 1];
+        final int[] keptFirstChild = new int[nodes + 2];
+        final long[] childTotals = new long[children.length];
+        for (int i = 0; i < children.length; i++) {
+            childTotals[i] = total[children[i]];
+        }
+        int kept = 1;
+        source[ROOT] = ROOT;
+        for (int node = 0; node < kept; node++) {
+            keptFirstChild[node] = kept;
+            final int from = source[node];
+            if (from < 0 || level[node] == depth) {
+                continue;
+            }
+            // top children by total, ties in name order; folded ones are summed into "other"
+            final int start = firstChild[from];
+            final int end = firstChild[from + 1];
+            int candidates = 0;
+            for (int i = start; i < end; i++) {
+                if (childTotals[i] >= minValue) {
+                    candidates++;
+                }
+            }
+            final boolean[] keep = new boolean[end - start];
+            if (candidates <= maxChildren) {
+                for (int i = start; i < end; i++) {
+                    keep[i - start] = childTotals[i] >= minValue;
+                }
             } else {
-                // not leaf
-                Map inner = (Map) v;
-                final ArrayNode nextAr = om.createArrayNode();
-                on.set("children", nextAr);
-                appendNodes(nextAr, inner);
+                final long[] ranked = Arrays.copyOfRange(childTotals, start, end);
+                for (int i = 0; i < ranked.length; i++) {
+                    // below minimum never wins over zero
+                    if (ranked[i] < minValue) {
+                        ranked[i] = 0;
+                    }
+                }
+                for (int i : TopN.top(ranked, 0, ranked.length, maxChildren)) {
+                    keep[i] = true;
+                }
+            }
+            long other = 0;
+            boolean folded = false;
+            for (int i = start; i < end; i++) {
+                final int child = children[i];
+                if (keep[i - start]) {
+                    source[kept] = child;
+                    level[kept] = level[node] + 1;
+                    keptOrdinal[kept] = ordinal[child];
+                    keptValue[kept++] = level[node] + 1 == depth ? total[child] : 0;
+                } else {
+                    other += total[child];
+                    folded = true;
+                }
             }
-            ar.add(on);
-        });
+            if (folded) {
+                source[kept] = -1;
+                level[kept] = level[node] + 1;
+                keptOrdinal[kept] = HierarchyReport.OTHER;
+                keptValue[kept++] = other;
+            }
+        }
+        keptFirstChild[kept] = kept;
+        // children of node n are n's range of the breadth first order itself, root is not anyone's child
+        final int[] keptChildren = new int[kept - 1];
+        final int[] first = new int[kept + 1];
+        for (int node = 0; node <= kept; node++) {
+            first[node] = keptFirstChild[node] - 1;
+        }
+        for (int i = 0; i < keptChildren.length; i++) {
+            keptChildren[i] = i + 1;
+        }
+        return new HierarchyReport(levelNames, Arrays.copyOf(keptOrdinal, kept), Arrays.copyOf(keptValue, kept), keptChildren, first);
     }
 
 }
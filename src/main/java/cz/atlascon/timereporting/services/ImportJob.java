@@ -0,0 +1,134 @@
+package cz.atlascon.timereporting.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * one upload imported in background, progress is updated by import thread and read by status requests
+ */
+public class ImportJob {
+
+    public enum Phase {
+        QUEUED, PARSING, BUILDING, STORING, DONE, FAILED, SUPERSEDED
+    }
+
+    private final long id;
+    private final boolean delta;
+    private final Instant submitted = Instant.now();
+    private final Map<String, AtomicLong> entryRows = new ConcurrentHashMap<>();
+    private final Map<Phase, Long> phaseMillis = Collections.synchronizedMap(new EnumMap<>(Phase.class));
+    private volatile long phaseStart;
+    private volatile Phase phase = Phase.QUEUED;
+    private volatile Instant started;
+    private volatile Instant finished;
+    private volatile String error;
+
+    ImportJob(final long id, final boolean delta) {
+        this.id = id;
+        this.delta = delta;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public Instant getSubmitted() {
+        return submitted;
+    }
+
+    public Instant getStarted() {
+        return started;
+    }
+
+    public Instant getFinished() {
+        return finished;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * rows parsed so far per export entry, in entry name order
+     */
+    public Map<String, Long> getEntryRows() {
+        final Map<String, Long> rows = new TreeMap<>();
+        entryRows.forEach((entry, count) -> rows.put(entry, count.get()));
+        return rows;
+    }
+
+    /**
+     * time spent in each finished phase
+     */
+    public Map<Phase, Long> getPhaseMillis() {
+        synchronized (phaseMillis) {
+            return new EnumMap<>(phaseMillis);
+        }
+    }
+
+    public long getRows() {
+        return entryRows.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    /**
+     * parsed rows per second since start, zero before start
+     */
+    public long getRowsPerSecond() {
+        final Instant from = started;
+        if (from == null) {
+            return 0;
+        }
+        final Instant to = finished != null ? finished : Instant.now();
+        final long millis = Math.max(1, Duration.between(from, to).toMillis());
+        return getRows() * 1000 / millis;
+    }
+
+    boolean isFinished() {
+        return phase == Phase.DONE || phase == Phase.FAILED || phase == Phase.SUPERSEDED;
+    }
+
+    void start() {
+        started = Instant.now();
+        phaseStart = System.nanoTime();
+        phase = Phase.PARSING;
+    }
+
+    void phase(final Phase phase) {
+        endPhase();
+        this.phase = phase;
+    }
+
+    private void endPhase() {
+        final long now = System.nanoTime();
+        if (started != null) {
+            phaseMillis.put(phase, (now - phaseStart) / 1_000_000);
+        }
+        phaseStart = now;
+    }
+
+    void parsed(final String entry, final long rows) {
+        entryRows.computeIfAbsent(entry, e -> new AtomicLong()).set(rows);
+    }
+
+    void finish(final Phase phase, final String error) {
+        endPhase();
+        this.error = error;
+        this.finished = Instant.now();
+        this.phase = phase;
+    }
+
+}
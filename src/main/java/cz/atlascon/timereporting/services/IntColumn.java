@@ -0,0 +1,65 @@
+package cz.atlascon.timereporting.services;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * appendable int column, finished to array backed buffer when on heap or to memory mapped one, see {@link Storage}
+ */
+public abstract class IntColumn {
+
+    private int size;
+
+    static IntColumn heap(final int expectedSize) {
+        return new IntColumn() {
+            private int[] values = new int[Math.max(16, expectedSize)];
+
+            @Override
+            void put(final int index, final int value) {
+                if (index == values.length) {
+                    values = Arrays.copyOf(values, values.length + (values.length >> 1));
+                }
+                values[index] = value;
+            }
+
+            @Override
+            IntBuffer values(final int size) {
+                return IntBuffer.wrap(values.length == size ? values : Arrays.copyOf(values, size));
+            }
+        };
+    }
+
+    static IntColumn mapped(final ColumnFile column) {
+        return new IntColumn() {
+            @Override
+            void put(final int index, final int value) {
+                column.chunk(Integer.BYTES).putInt(value);
+            }
+
+            @Override
+            IntBuffer values(final int size) {
+                return column.map().asIntBuffer();
+            }
+        };
+    }
+
+    abstract void put(int index, int value);
+
+    abstract IntBuffer values(int size);
+
+    public void add(final int value) {
+        put(size++, value);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * all values, nothing can be added afterwards
+     */
+    public IntBuffer finish() {
+        return values(size);
+    }
+
+}
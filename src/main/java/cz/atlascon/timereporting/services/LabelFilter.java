@@ -0,0 +1,32 @@
+package cz.atlascon.timereporting.services;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * logs of issues / merge requests having all {@code all} labels and none of {@code none} labels,
+ * names are normalized like label titles - stripped and lower case
+ */
+public record LabelFilter(Set<String> all, Set<String> none) {
+
+    public static final LabelFilter ANY = new LabelFilter(Set.of(), Set.of());
+
+    public static LabelFilter of(final Collection<String> all, final Collection<String> none) {
+        return new LabelFilter(normalized(all), normalized(none));
+    }
+
+    private static Set<String> normalized(final Collection<String> labels) {
+        return labels == null ? Set.of() : labels.stream()
+                .filter(Objects::nonNull)
+                .map(label -> label.strip().toLowerCase())
+                .filter(label -> !label.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public boolean isAny() {
+        return all.isEmpty() && none.isEmpty();
+    }
+
+}
@@ -0,0 +1,312 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Splitter;
+import cz.atlascon.timereporting.domain.Label;
+import cz.atlascon.timereporting.domain.LabelLink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * labels and products of issues and merge requests; each label is normalized and its product parsed once,
+ * issues and merge requests get dense ordinals (position in sorted ids) and their products are plain arrays
+ * indexed by them; label filters are evaluated over per label sorted items - issue ordinals followed by
+ * merge request ordinals - combined as sorted arrays, no structure spans all items
+ */
+public class Labels {
+
+    private static final String PRODUKT_PREFIX = "produkt-";
+
+    // sorted ids, dense ordinal = index
+    private final int[] issueIds;
+    private final int[] mergeRequestIds;
+    private final Dictionary labelNames;
+    private final Dictionary productNames;
+    private final int unknownProduct;
+    // product ordinal per dense issue / merge request ordinal
+    private final int[] issueProduct;
+    private final int[] mergeRequestProduct;
+    // sorted items having the label, per label ordinal
+    private final int[][] labelItems;
+
+    /**
+     * @param unknownProduct product of items without product label
+     */
+    public Labels(final Map<Integer, Label> labels,
+                  final Collection<LabelLink> labelLinks,
+                  final Collection<Integer> issues,
+                  final Collection<Integer> mergeRequests,
+                  final String unknownProduct) {
+        // per label, by id
+        final int[] labelIds = labels.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        final String[] titles = new String[labelIds.length];
+        final String[] products = new String[labelIds.length];
+        for (int i = 0; i < labelIds.length; i++) {
+            final Label label = labels.get(labelIds[i]);
+            titles[i] = label.title().strip().toLowerCase();
+            products[i] = productFromLabelDescription(label.description());
+        }
+        this.labelNames = new Dictionary(Arrays.asList(titles));
+        final List<String> productList = new ArrayList<>(Arrays.asList(products));
+        productList.add(unknownProduct);
+        this.productNames = new Dictionary(productList);
+        final int[] labelOrdinal = Arrays.stream(titles).mapToInt(labelNames::ordinal).toArray();
+        final int[] labelProduct = Arrays.stream(products).mapToInt(productNames::ordinal).toArray();
+
+        // items linked to labels are indexed even when missing in export
+        this.issueIds = ids(issues, labelLinks, LabelLink.Type.ISSUE);
+        this.mergeRequestIds = ids(mergeRequests, labelLinks, LabelLink.Type.MERGE_REQUEST);
+        this.issueProduct = new int[issueIds.length];
+        this.mergeRequestProduct = new int[mergeRequestIds.length];
+        Arrays.fill(issueProduct, TimeLogStore.NONE);
+        Arrays.fill(mergeRequestProduct, TimeLogStore.NONE);
+        final int[][] linked = new int[labelLinks.size()][];
+        int links = 0;
+        for (LabelLink ll : labelLinks) {
+            final int label = Arrays.binarySearch(labelIds, ll.label_id());
+            if (label < 0) {
+                continue;
+            }
+            final boolean issue = ll.target_type() == LabelLink.Type.ISSUE;
+            final int item = issue ? issueOrdinal(ll.target_id()) : mergeRequestOrdinal(ll.target_id());
+            final int[] product = issue ? issueProduct : mergeRequestProduct;
+            // first product label of an item wins
+            if (product[item] == TimeLogStore.NONE) {
+                product[item] = labelProduct[label];
+            }
+            linked[links++] = new int[]{issue ? 1 : 0, item, labelOrdinal[label]};
+        }
+        this.unknownProduct = productNames.ordinal(unknownProduct);
+        replaceNone(issueProduct, this.unknownProduct);
+        replaceNone(mergeRequestProduct, this.unknownProduct);
+        final int[] labelItemCount = new int[labelNames.size()];
+        for (int i = 0; i < links; i++) {
+            labelItemCount[linked[i][2]]++;
+        }
+        this.labelItems = new int[labelNames.size()][];
+        Arrays.setAll(labelItems, label -> new int[labelItemCount[label]]);
+        final int[] size = new int[labelItems.length];
+        for (int i = 0; i < links; i++) {
+            final int label = linked[i][2];
+            labelItems[label][size[label]++] = linked[i][0] == 1 ? linked[i][1] : issueIds.length + linked[i][1];
+        }
+        for (int label = 0; label < labelItems.length; label++) {
+            labelItems[label] = Arrays.stream(labelItems[label]).sorted().distinct().toArray();
+        }
+    }
+
+    private static int[] ids(final Collection<Integer> items, final Collection<LabelLink> labelLinks, final LabelLink.Type type) {
+        return IntStream.concat(items.stream().mapToInt(Integer::intValue),
+                labelLinks.stream().filter(ll -> ll.target_type() == type).mapToInt(LabelLink::target_id))
+                .sorted().distinct().toArray();
+    }
+
+    private static void replaceNone(final int[] products, final int unknown) {
+        for (int i = 0; i < products.length; i++) {
+            if (products[i] == TimeLogStore.NONE) {
+                products[i] = unknown;
+            }
+        }
+    }
+
+    private static String productFromLabelDescription(final String description) {
+        if (description == null || description.isBlank()) {
+            return null;
+        }
+        if (description.contains(PRODUKT_PREFIX)) {
+            final List<String> itemz = Splitter.on(' ').splitToList(description.strip().toLowerCase());
+            final String prod = itemz.stream().filter(i -> i.contains(PRODUKT_PREFIX)).findFirst().orElse(null);
+            return prod.substring(PRODUKT_PREFIX.length());
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * dense ordinal of issue, negative when unknown
+     */
+    public int issueOrdinal(final int issueId) {
+        return Arrays.binarySearch(issueIds, issueId);
+    }
+
+    /**
+     * dense ordinal of merge request, negative when unknown
+     */
+    public int mergeRequestOrdinal(final int mergeRequestId) {
+        return Arrays.binarySearch(mergeRequestIds, mergeRequestId);
+    }
+
+    /**
+     * dense ordinal of item a log belongs to - its merge request when set, its issue otherwise; NONE when unknown
+     */
+    public int item(final int issueId, final int mergeRequestId) {
+        if (mergeRequestId != TimeLogStore.NONE) {
+            final int mr = mergeRequestOrdinal(mergeRequestId);
+            return mr < 0 ? TimeLogStore.NONE : issueIds.length + mr;
+        }
+        final int issue = issueOrdinal(issueId);
+        return issue < 0 ? TimeLogStore.NONE : issue;
+    }
+
+    public int itemCount() {
+        return issueIds.length + mergeRequestIds.length;
+    }
+
+    /**
+     * approximate heap size in bytes, dictionaries of labels and products included
+     */
+    public long weight() {
+        // ids and products of items
+        long weight = 8L * (issueIds.length + mergeRequestIds.length) + labelNames.weight() + productNames.weight();
+        for (int[] items : labelItems) {
+            weight += 16 + 4L * items.length;
+        }
+        return weight;
+    }
+
+    /**
+     * given items, or all items but them when {@code complement}; a bitmap up to the last item when it is
+     * small or at least every 32nd item is there, an open addressing hash table of the items otherwise -
+     * so it is never much larger than the sorted items themselves
+     */
+    public static final class Items {
+
+        private static final int EMPTY = -1;
+        // 8KB, a bit test is cheaper than hashing
+        private static final int SMALL_BITMAP = 1 << 16;
+
+        private final boolean complement;
+        private final BitSet bits;
+        private final int[] table;
+        private final int shift;
+
+        Items(final int[] sorted, final boolean complement) {
+            this.complement = complement;
+            final int width = sorted.length == 0 ? 0 : sorted[sorted.length - 1] + 1;
+            if (width <= SMALL_BITMAP || sorted.length >= width / 32) {
+                this.bits = new BitSet(width);
+                Arrays.stream(sorted).forEach(bits::set);
+                this.table = null;
+                this.shift = 0;
+            } else {
+                // load factor at most 1/4, most looked up items are missing
+                final int bitCount = 32 - Integer.numberOfLeadingZeros(sorted.length) + 2;
+                this.bits = null;
+                this.table = new int[1 << bitCount];
+                this.shift = 32 - bitCount;
+                Arrays.fill(table, EMPTY);
+                final int mask = table.length - 1;
+                for (int item : sorted) {
+                    int slot = hash(item);
+                    while (table[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = item;
+                }
+            }
+        }
+
+        public boolean contains(final int item) {
+            return has(item) != complement;
+        }
+
+        private boolean has(final int item) {
+            if (bits != null) {
+                return bits.get(item);
+            }
+            int slot = hash(item);
+            for (int found = table[slot]; found != item; found = table[slot]) {
+                if (found == EMPTY) {
+                    return false;
+                }
+                slot = (slot + 1) & (table.length - 1);
+            }
+            return true;
+        }
+
+        private int hash(final int item) {
+            return (item * 0x9E3779B9) >>> shift;
+        }
+
+    }
+
+    /**
+     * items passing the filter - items of the rarest required label looked up in the other required ones, then
+     * items of excluded labels removed; without required labels it is the complement of the excluded items
+     */
+    public Items items(final LabelFilter filter) {
+        if (filter.all().stream().anyMatch(label -> !labelNames.contains(label))) {
+            return new Items(new int[0], false);
+        }
+        final int[][] required = filter.all().stream()
+                .map(label -> labelItems[labelNames.ordinal(label)])
+                .sorted(Comparator.comparingInt(labelled -> labelled.length))
+                .toArray(int[][]::new);
+        final int[] excluded = filter.none().stream()
+                .filter(labelNames::contains)
+                .map(label -> labelItems[labelNames.ordinal(label)])
+                .reduce(new int[0], Labels::union);
+        if (required.length == 0) {
+            return new Items(excluded, true);
+        }
+        int[] items = required[0];
+        for (int i = 1; i < required.length; i++) {
+            items = intersection(items, required[i]);
+        }
+        return new Items(difference(items, excluded), false);
+    }
+
+    // smaller side is looked up in the larger one
+    private static int[] intersection(final int[] smaller, final int[] larger) {
+        return Arrays.stream(smaller).filter(item -> Arrays.binarySearch(larger, item) >= 0).toArray();
+    }
+
+    private static int[] difference(final int[] items, final int[] removed) {
+        return removed.length == 0 ? items : Arrays.stream(items).filter(item -> Arrays.binarySearch(removed, item) < 0).toArray();
+    }
+
+    private static int[] union(final int[] a, final int[] b) {
+        final int[] union = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length || j < b.length) {
+            final int item = j == b.length || i < a.length && a[i] <= b[j] ? a[i] : b[j];
+            union[size++] = item;
+            while (i < a.length && a[i] == item) {
+                i++;
+            }
+            while (j < b.length && b[j] == item) {
+                j++;
+            }
+        }
+        return Arrays.copyOf(union, size);
+    }
+
+    public int issueCount() {
+        return issueIds.length;
+    }
+
+    public Dictionary getProductNames() {
+        return productNames;
+    }
+
+    /**
+     * product ordinal of a log - of its merge request when set, of its issue otherwise
+     */
+    public int product(final int issueId, final int mergeRequestId) {
+        if (mergeRequestId != TimeLogStore.NONE) {
+            final int mr = mergeRequestOrdinal(mergeRequestId);
+            return mr < 0 ? unknownProduct : mergeRequestProduct[mr];
+        }
+        final int issue = issueOrdinal(issueId);
+        return issue < 0 ? unknownProduct : issueProduct[issue];
+    }
+
+}
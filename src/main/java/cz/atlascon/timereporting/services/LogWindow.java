@@ -0,0 +1,12 @@
+package cz.atlascon.timereporting.services;
+
+/**
+ * contiguous range of time sorted {@link TimeLogStore} / {@link Rollup} rows, [from, to)
+ */
+public record LogWindow(int from, int to) {
+
+    public int size() {
+        return to - from;
+    }
+
+}
@@ -0,0 +1,65 @@
+package cz.atlascon.timereporting.services;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * appendable long column, finished to array backed buffer when on heap or to memory mapped one, see {@link Storage}
+ */
+public abstract class LongColumn {
+
+    private int size;
+
+    static LongColumn heap(final int expectedSize) {
+        return new LongColumn() {
+            private long[] values = new long[Math.max(16, expectedSize)];
+
+            @Override
+            void put(final int index, final long value) {
+                if (index == values.length) {
+                    values = Arrays.copyOf(values, values.length + (values.length >> 1));
+                }
+                values[index] = value;
+            }
+
+            @Override
+            LongBuffer values(final int size) {
+                return LongBuffer.wrap(values.length == size ? values : Arrays.copyOf(values, size));
+            }
+        };
+    }
+
+    static LongColumn mapped(final ColumnFile column) {
+        return new LongColumn() {
+            @Override
+            void put(final int index, final long value) {
+                column.chunk(Long.BYTES).putLong(value);
+            }
+
+            @Override
+            LongBuffer values(final int size) {
+                return column.map().asLongBuffer();
+            }
+        };
+    }
+
+    abstract void put(int index, long value);
+
+    abstract LongBuffer values(int size);
+
+    public void add(final long value) {
+        put(size++, value);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * all values, nothing can be added afterwards
+     */
+    public LongBuffer finish() {
+        return values(size);
+    }
+
+}
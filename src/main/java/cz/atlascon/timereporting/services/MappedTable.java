@@ -0,0 +1,280 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * read only id keyed table in memory mapped files - sorted ids and row offsets are fixed width columns,
+ * rows are encoded by {@link SnapshotFile.RowCodec} and decoded on access
+ */
+public class MappedTable<V> extends AbstractMap<Integer, V> {
+
+    private final int size;
+    private final IntBuffer ids;
+    private final LongBuffer offsets;
+    private final ByteBuffer rows;
+    private final SnapshotFile.RowCodec<V> codec;
+
+    private MappedTable(final IntBuffer ids,
+                        final LongBuffer offsets,
+                        final ByteBuffer rows,
+                        final SnapshotFile.RowCodec<V> codec) {
+        this.size = ids.limit();
+        this.ids = ids;
+        this.offsets = offsets;
+        this.rows = rows;
+        this.codec = codec;
+    }
+
+    /**
+     * table filled row by row, rows are appended to {@code file}.rows as they come and the id index is sorted
+     * on {@link #finish()}, last row of an id wins; write only until finished
+     */
+    static class Writer<V> extends AbstractMap<Integer, V> implements Closeable {
+
+        private final Storage storage;
+        private final Path file;
+        private final SnapshotFile.RowCodec<V> codec;
+        private final CountingOutputStream counting;
+        private final DataOutputStream out;
+        private int size;
+        private int[] ids = new int[1024];
+        private long[] offsets = new long[1024];
+
+        Writer(final Storage storage, final Path file, final SnapshotFile.RowCodec<V> codec) {
+            this.storage = storage;
+            this.file = file;
+            this.codec = codec;
+            try {
+                this.counting = new CountingOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(rowsFile(file), StandardOpenOption.CREATE_NEW), 1 << 16));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.out = new DataOutputStream(counting);
+        }
+
+        /**
+         * appends the row, previous row of the same id is not looked up and null is always returned
+         */
+        @Override
+        public V put(final Integer id, final V row) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1));
+                offsets = Arrays.copyOf(offsets, ids.length);
+            }
+            ids[size] = id;
+            offsets[size] = counting.getCount();
+            try {
+                codec.writer().write(out, row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Preconditions.checkState(counting.getCount() < Integer.MAX_VALUE, "Table %s over 2GB", file);
+            size++;
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Entry<Integer, V>> entrySet() {
+            throw new UnsupportedOperationException("Table " + file + " not finished yet");
+        }
+
+        /**
+         * abandon unfinished table
+         */
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        /**
+         * write sorted index to {@code file}.ids and {@code file}.offsets and map the table
+         */
+        MappedTable<V> finish() {
+            // (id, row) packed to one long, row breaks ties, so the last row of an id comes last
+            final long[] keys = new long[size];
+            for (int row = 0; row < size; row++) {
+                keys[row] = ((long) ids[row] << 32) | row;
+            }
+            Arrays.sort(keys);
+            final IntColumn sortedIds = IntColumn.mapped(storage.column(file.resolveSibling(file.getFileName() + ".ids")));
+            final LongColumn sortedOffsets = LongColumn.mapped(storage.column(file.resolveSibling(file.getFileName() + ".offsets")));
+            for (int i = 0; i < size; i++) {
+                if (i + 1 < size && keys[i + 1] >> 32 == keys[i] >> 32) {
+                    continue;
+                }
+                sortedIds.add((int) (keys[i] >> 32));
+                sortedOffsets.add(offsets[(int) keys[i]]);
+            }
+            try {
+                out.close();
+                try (FileChannel channel = FileChannel.open(rowsFile(file), StandardOpenOption.READ)) {
+                    return new MappedTable<>(sortedIds.finish(), sortedOffsets.finish(),
+                            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), codec);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static Path rowsFile(final Path file) {
+        return file.resolveSibling(file.getFileName() + ".rows");
+    }
+
+    private V decode(final int row) {
+        final ByteBuffer in = rows.duplicate().position((int) offsets.get(row));
+        try {
+            return codec.reader().read(new DataInputStream(new InputStream() {
+                @Override
+                public int read() {
+                    return in.hasRemaining() ? in.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(final byte[] bytes, final int offset, final int length) {
+                    if (!in.hasRemaining()) {
+                        return -1;
+                    }
+                    final int n = Math.min(length, in.remaining());
+                    in.get(bytes, offset, n);
+                    return n;
+                }
+            }));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int find(final Object key) {
+        if (!(key instanceof Integer)) {
+            return -1;
+        }
+        final int id = (Integer) key;
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midId = ids.get(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public V get(final Object key) {
+        final int row = find(key);
+        return row < 0 ? null : decode(row);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Integer> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                return new Iterator<>() {
+                    private int row;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < size;
+                    }
+
+                    @Override
+                    public Integer next() {
+                        if (row >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        return ids.get(row++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Integer, V>> iterator() {
+                return new Iterator<>() {
+                    private int row;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < size;
+                    }
+
+                    @Override
+                    public Entry<Integer, V> next() {
+                        if (row >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<Integer, V> entry = new SimpleImmutableEntry<>(ids.get(row), decode(row));
+                        row++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "MappedTable[" + size + " rows]";
+    }
+
+}
@@ -0,0 +1,119 @@
+package cz.atlascon.timereporting.services;
+
+import javax.inject.Named;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * in process counters, gauges and histograms, names sorted - exposed as json by metrics resource
+ */
+@Named
+public class Metrics {
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    public void count(final String name, final long delta) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * value read on every metrics request, registering the same name again replaces it
+     */
+    public void gauge(final String name, final Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    public Histogram histogram(final String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public Map<String, Long> getCounters() {
+        final Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    public Map<String, Number> getGauges() {
+        final Map<String, Number> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * non negative values in power of two buckets, quantiles are bucket upper bounds - at most 2x above real value
+     */
+    public static class Histogram {
+
+        // bucket b holds values of bit length b, i.e. [2^(b-1), 2^b)
+        private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        public void record(final long value) {
+            final long v = Math.max(0, value);
+            buckets[Long.SIZE - Long.numberOfLeadingZeros(v)].increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            final long count = getCount();
+            return count == 0 ? 0 : (double) getSum() / count;
+        }
+
+        /**
+         * approximate value below which {@code q} of recorded values are
+         */
+        public long quantile(final double q) {
+            final long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                counts[b] = buckets[b].sum();
+                count += counts[b];
+            }
+            final long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank && counts[b] > 0) {
+                    return b == 0 ? 0 : Math.min(getMax(), (1L << b) - 1);
+                }
+            }
+            return 0;
+        }
+    }
+
+}
@@ -1,11 +1,12 @@
 package cz.atlascon.timereporting.services;
 
-import com.google.common.base.Splitter;
-import com.google.common.collect.Lists;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import cz.atlascon.timereporting.domain.*;
 import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFCell;
 import org.apache.poi.xssf.streaming.SXSSFRow;
 import org.apache.poi.xssf.streaming.SXSSFSheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
@@ -13,21 +14,45 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+/**
+ * imported data and reports over it, one instance is one immutable snapshot of the data
+ * <p>
+ * all state is final and never changes after construction - dimension tables are read only views
+ * (or read only mapped files), columns and dictionaries are never written again, merge request logs
+ * get the fake issue resolved at import; any number of request threads can read a processor while
+ * an import builds the next one, {@link DataService} then publishes it through an atomic reference
+ */
 public class Processor {
 
+    /**
+     * longest range of calendars and time series, in days
+     */
+    public static final int MAX_CALENDAR_DAYS = 10 * 366;
     private static final Logger LOGGER = LoggerFactory.getLogger(Processor.class);
     private static final Issue MR_ISSUE = new Issue(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
             Instant.ofEpochSecond(0), "MergeRequest", "Fake issue for merge requests");
-    private static final String PRODUKT_PREFIX = "produkt-";
     private static final String UNKNOWN_PRODUCT = "neznámý";
-    private final List<TimeLog> logs;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    private static final double SECONDS_PER_HOUR = 3_600d;
+    private static final int MIN_CHUNK_ROWS = 16_384;
+    private final TimeLogStore logs;
+    private final Rollup rollup;
+    private final UserDays userDays;
+    private final Map<ReportElement, DayTotals> dayTotals;
     private final Map<Integer, Namespace> namespaces;
     private final Map<Integer, Label> labels;
     private final Map<Integer, User> users;
@@ -35,30 +60,211 @@ public class Processor {
     private final Map<Integer, Issue> issues;
     private final Map<Integer, MergeRequest> mergeRequests;
     private final List<LabelLink> labelLinks;
-    // labels
-    private final Map<MergeRequest, Set<String>> mergeRequestLabels = Maps.newHashMap();
-    private final Map<Issue, Set<String>> issueLabels = Maps.newHashMap();
-    // products
-    private final Map<MergeRequest, String> mergeRequestProduct = Maps.newHashMap();
-    private final Map<Issue, String> issueProduct = Maps.newHashMap();
-
-    public Processor(final List<TimeLog> logs,
-                     final List<Namespace> namespaces,
-                     final List<Label> labels,
-                     final List<User> users,
-                     final List<Project> projects,
-                     final List<Issue> issues,
-                     final List<MergeRequest> mergeRequests,
-                     final List<LabelLink> labelLinks) {
-        this.logs = logs;
-        this.namespaces = namespaces.stream().collect(Collectors.toMap(Namespace::id, i -> i));
-        this.labels = labels.stream().collect(Collectors.toMap(Label::id, i -> i));
-        this.users = users.stream().collect(Collectors.toMap(User::id, i -> i));
-        this.projects = projects.stream().collect(Collectors.toMap(Project::id, i -> i));
-        this.issues = issues.stream().collect(Collectors.toMap(Issue::id, i -> i));
-        this.mergeRequests = mergeRequests.stream().collect(Collectors.toMap(MergeRequest::id, i -> i));
-        this.labelLinks = labelLinks;
-        labelItems();
+    // labels and products of issues and merge requests
+    private final Labels itemLabels;
+    // dimension ordinals
+    private final Dictionary projectNames;
+    private final Dictionary namespaceNames;
+    private final Dictionary productNames;
+    private final Dictionary issueTitles;
+    private final Dictionary userNames;
+    // heap or mapped files of this processor
+    private final Storage storage;
+    // hierarchy of at least this many rows is aggregated in parallel
+    private final int parallelThreshold;
+    // approximate bytes of all above but dimension tables, of them columns of time logs and rollup
+    private final long footprint;
+    private final long columnsFootprint;
+
+    public Processor(final ExportData data, final int parallelThreshold) {
+        this(data, Storage.HEAP, parallelThreshold);
+    }
+
+    /**
+     * @param storage where time logs, rollup and the large dimension tables are kept, {@code data} has to be
+     *                parsed into the same storage; only dictionaries and small tables are always on heap
+     */
+    public Processor(final ExportData data, final Storage storage, final int parallelThreshold) {
+        this.storage = storage;
+        this.parallelThreshold = parallelThreshold;
+        this.namespaces = Collections.unmodifiableMap(data.namespaces());
+        this.labels = Collections.unmodifiableMap(data.labels());
+        this.users = Collections.unmodifiableMap(data.users());
+        this.projects = Storage.finish(data.projects());
+        this.issues = Storage.finish(data.issues());
+        this.mergeRequests = Storage.finish(data.mergeRequests());
+        this.labelLinks = Collections.unmodifiableList(data.labelLinks());
+        this.itemLabels = new Labels(labels, labelLinks, issues.keySet(), mergeRequests.keySet(), UNKNOWN_PRODUCT);
+        this.projectNames = new Dictionary(this.projects.values().stream().map(Project::name).collect(Collectors.toList()));
+        this.namespaceNames = new Dictionary(this.namespaces.values().stream().map(Namespace::name).collect(Collectors.toList()));
+        this.productNames = itemLabels.getProductNames();
+        final List<String> titles = this.issues.values().stream().map(Issue::title).collect(Collectors.toList());
+        titles.add(MR_ISSUE.title());
+        this.issueTitles = new Dictionary(titles);
+        this.userNames = new Dictionary(this.users.values().stream().map(User::name).collect(Collectors.toList()));
+        // project and namespace per item and title per issue, every table row is decoded once
+        final Map<Integer, int[]> projectOrdinals = Maps.newHashMap();
+        this.projects.forEach((id, project) -> {
+            final Namespace namespace = namespaces.get(project.namespace_id());
+            projectOrdinals.put(id, new int[]{projectNames.ordinal(project.name()),
+                    namespaceNames.ordinal(namespace == null ? null : namespace.name())});
+        });
+        final int[] itemProject = new int[itemLabels.itemCount()];
+        final int[] itemNamespace = new int[itemLabels.itemCount()];
+        final int[] issueTitle = new int[itemLabels.issueCount()];
+        Arrays.fill(itemProject, TimeLogStore.NONE);
+        Arrays.fill(itemNamespace, TimeLogStore.NONE);
+        Arrays.fill(issueTitle, TimeLogStore.NONE);
+        final BiConsumer<Integer, Integer> itemInProject = (item, projectId) -> {
+            final int[] ordinals = projectOrdinals.get(projectId);
+            if (ordinals != null) {
+                itemProject[item] = ordinals[0];
+                itemNamespace[item] = ordinals[1];
+            }
+        };
+        this.issues.forEach((id, issue) -> {
+            final int item = itemLabels.issueOrdinal(id);
+            issueTitle[item] = issueTitles.ordinal(issue.title());
+            itemInProject.accept(item, issue.project_id());
+        });
+        this.mergeRequests.forEach((id, mr) ->
+                itemInProject.accept(itemLabels.issueCount() + itemLabels.mergeRequestOrdinal(id), mr.target_project_id()));
+        final int mrIssueTitle = issueTitles.ordinal(MR_ISSUE.title());
+        // resolve every dimension of each log once, at import
+        this.logs = data.logs().build(
+                (userId, issueId, mergeRequestId) -> {
+                    final int item = itemLabels.item(issueId, mergeRequestId);
+                    return item == TimeLogStore.NONE ? TimeLogStore.NONE : itemProject[item];
+                },
+                (userId, issueId, mergeRequestId) -> {
+                    final int item = itemLabels.item(issueId, mergeRequestId);
+                    return item == TimeLogStore.NONE ? TimeLogStore.NONE : itemNamespace[item];
+                },
+                (userId, issueId, mergeRequestId) -> itemLabels.product(issueId, mergeRequestId),
+                (userId, issueId, mergeRequestId) -> {
+                    // merge request logs get the fake issue
+                    if (issueId == TimeLogStore.NONE) {
+                        return mrIssueTitle;
+                    }
+                    final int issue = itemLabels.issueOrdinal(issueId);
+                    return issue < 0 ? TimeLogStore.NONE : issueTitle[issue];
+                },
+                (userId, issueId, mergeRequestId) -> {
+                    final User user = users.get(userId);
+                    return userNames.ordinal(user == null ? null : user.name());
+                },
+                (userId, issueId, mergeRequestId) -> itemLabels.item(issueId, mergeRequestId));
+        this.rollup = Rollup.build(this.logs, storage);
+        LOGGER.info("Rolled up {} time logs to {} rows", this.logs.size(), rollup.size());
+        this.userDays = new UserDays(rollup);
+        final Map<ReportElement, DayTotals> dayTotals = new EnumMap<>(ReportElement.class);
+        for (ReportElement element : ReportElement.values()) {
+            dayTotals.put(element, new DayTotals(rollup, element, dictionary(element).size()));
+        }
+        this.dayTotals = Collections.unmodifiableMap(dayTotals);
+        this.columnsFootprint = logs.weight() + rollup.weight();
+        // dictionaries of labels and products are counted by labels
+        this.footprint = columnsFootprint + userDays.weight() + itemLabels.weight()
+                + dayTotals.values().stream().mapToLong(DayTotals::weight).sum()
+                + Stream.of(projectNames, namespaceNames, issueTitles, userNames).mapToLong(Dictionary::weight).sum();
+    }
+
+    /**
+     * estimated bytes of time logs, rollup, per day sums, label index and dictionaries, computed from their
+     * sizes; dimension tables are not counted
+     */
+    public long getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * part of {@link #getFootprint()} kept in mapped files, zero on heap
+     */
+    public long getMappedFootprint() {
+        return storage.dir() == null ? 0 : columnsFootprint;
+    }
+
+    /**
+     * number of time logs in [from, to), rows scanned by timesheet and label filtered calendars
+     */
+    public int getLogWindowSize(final Instant from, final Instant to) {
+        return getLogWindow(from, to).size();
+    }
+
+    /**
+     * directory of mapped files, null for on heap processor
+     */
+    public Path getStorageDir() {
+        return storage.dir();
+    }
+
+    /**
+     * new processor in {@code storage} with delta rows added, rows with the same id are replaced,
+     * this processor is left untouched
+     */
+    public Processor merge(final ExportData delta, final Storage storage) {
+        final Set<Integer> updatedLogs = delta.logs().ids().boxed().collect(Collectors.toSet());
+        final TimeLogStore.Builder mergedLogs = logs.toBuilder(storage, id -> !updatedLogs.contains(id)).addAll(delta.logs());
+        final Map<Integer, LabelLink> mergedLabelLinks = Maps.newLinkedHashMap();
+        labelLinks.forEach(ll -> mergedLabelLinks.put(ll.id(), ll));
+        delta.labelLinks().forEach(ll -> mergedLabelLinks.put(ll.id(), ll));
+        return new Processor(new ExportData(mergedLogs,
+                merged(namespaces, delta.namespaces(), Maps.newHashMap()),
+                merged(labels, delta.labels(), Maps.newHashMap()),
+                merged(users, delta.users(), Maps.newHashMap()),
+                merged(projects, delta.projects(), storage.table("projects", SnapshotFile.PROJECTS)),
+                merged(issues, delta.issues(), storage.table("issues", SnapshotFile.ISSUES)),
+                merged(mergeRequests, delta.mergeRequests(), storage.table("merge_requests", SnapshotFile.MERGE_REQUESTS)),
+                new ArrayList<>(mergedLabelLinks.values())), storage, parallelThreshold);
+    }
+
+    private static <V> Map<Integer, V> merged(final Map<Integer, V> current,
+                                              final Map<Integer, V> delta,
+                                              final Map<Integer, V> merged) {
+        merged.putAll(current);
+        merged.putAll(delta);
+        return merged;
+    }
+
+    // source data for snapshot
+
+    TimeLogStore logs() {
+        return logs;
+    }
+
+    Map<Integer, Namespace> namespaces() {
+        return namespaces;
+    }
+
+    Map<Integer, Label> labels() {
+        return labels;
+    }
+
+    Map<Integer, User> users() {
+        return users;
+    }
+
+    Map<Integer, Project> projects() {
+        return projects;
+    }
+
+    Map<Integer, Issue> issues() {
+        return issues;
+    }
+
+    Map<Integer, MergeRequest> mergeRequests() {
+        return mergeRequests;
+    }
+
+    List<LabelLink> labelLinks() {
+        return labelLinks;
+    }
+
+    /**
+     * newest time log update, delta exports should contain rows updated since then
+     */
+    public Instant getLastUpdatedAt() {
+        return logs.lastUpdatedAt() == Long.MIN_VALUE ? null : Instant.ofEpochSecond(logs.lastUpdatedAt());
     }
 
     public List<User> getUsers() {
@@ -67,225 +273,500 @@ public class Processor {
         return users;
     }
 
-    public Set<String> getComponents(Instant from, Instant to, final ReportElement element) {
-        final Set<String> elements = getLogWindow(from, to).stream().map(log ->
-                switch (element) {
-                    case ISSUE -> getVisualizable(log, element);
-                    case NAMESPACE -> getVisualizable(log, element);
-                    case PRODUCT -> getVisualizable(log, element);
-                    case PROJECT -> getVisualizable(log, element);
-                    case USER -> getVisualizable(log, element);
-                }).collect(Collectors.toSet());
-        final ArrayList<String> sorted = new ArrayList<>(elements);
-        Collections.sort(sorted);
-        return new LinkedHashSet<>(sorted);
+    public Set<String> getComponents(final Instant from, final Instant to, final ReportElement element) {
+        return getComponents(from, to).get(element);
     }
 
     /**
-     * attach labels to merge requests / issues
+     * sorted distinct values of every element in [from, to), collected by one scan of the window
      */
-    private void labelItems() {
-        labelLinks.forEach(ll -> {
-            final String label = labels.get(ll.label_id()).title().strip().toLowerCase();
-            final String product = productFromLabelDescription(labels.get(ll.label_id()).description());
-            if (ll.target_type() == LabelLink.Type.ISSUE) {
-                final Issue issue = issues.get(ll.target_id());
-                issueLabels.computeIfAbsent(issue, id -> new HashSet<>()).add(label);
-                if (product != null) {
-                    issueProduct.computeIfAbsent(issue, id -> product);
-                }
-            } else if (ll.target_type() == LabelLink.Type.MERGE_REQUEST) {
-                final MergeRequest mergeRequest = mergeRequests.get(ll.target_id());
-                mergeRequestLabels.computeIfAbsent(mergeRequest, id -> new HashSet<>()).add(label);
-                if (product != null) {
-                    mergeRequestProduct.computeIfAbsent(mergeRequest, id -> product);
-                }
-            } else {
-                throw new IllegalArgumentException("?");
-            }
+    public Map<ReportElement, Set<String>> getComponents(final Instant from, final Instant to) {
+        return getComponents(from, to, rows -> {
         });
     }
 
-    private String productFromLabelDescription(final String description) {
-        if (description == null || description.isBlank()) {
-            return null;
+    /**
+     * @param windowRows gets the number of rows scanned
+     */
+    public Map<ReportElement, Set<String>> getComponents(final Instant from, final Instant to, final IntConsumer windowRows) {
+        final Slice slice = getSlice(from, to);
+        windowRows.accept(slice.window().size());
+        final ReportRows rows = slice.rows();
+        final ReportElement[] elements = ReportElement.values();
+        final BitSet[] ordinals = new BitSet[elements.length];
+        for (ReportElement element : elements) {
+            ordinals[element.ordinal()] = new BitSet(dictionary(element).size());
         }
-        if (description.contains(PRODUKT_PREFIX)) {
-            final List<String> itemz = Splitter.on(' ').splitToList(description.strip().toLowerCase());
-            final String prod = itemz.stream().filter(i -> i.contains(PRODUKT_PREFIX)).findFirst().orElse(null);
-            return prod.substring(PRODUKT_PREFIX.length());
-        } else {
-            return null;
+        for (int row = slice.window().from(); row < slice.window().to(); row++) {
+            for (ReportElement element : elements) {
+                final int ordinal = rows.ordinal(element, row);
+                if (ordinal != TimeLogStore.NONE) {
+                    ordinals[element.ordinal()].set(ordinal);
+                }
+            }
+        }
+        // dictionaries are in name order already
+        final Map<ReportElement, Set<String>> components = new EnumMap<>(ReportElement.class);
+        for (ReportElement element : elements) {
+            final Dictionary names = dictionary(element);
+            final Set<String> values = new LinkedHashSet<>();
+            ordinals[element.ordinal()].stream().forEach(ordinal -> values.add(names.name(ordinal)));
+            components.put(element, values);
         }
+        return components;
     }
 
-
-    public String getHierarchyReport(final Instant from, final Instant to,
-                                     final List<ReportElement> elements) {
-        // filter
-        final List<TimeLog> filtered = getLogWindow(from, to);
-        LOGGER.info("Processing {} time logs", filtered.size());
-
-        // build
-        return createSunburst(filtered, elements);
-
+    public HierarchyReport getHierarchyReport(final Instant from, final Instant to,
+                                              final List<ReportElement> elements) {
+        return getHierarchyReport(from, to, elements, LabelFilter.ANY);
     }
 
-    private List<TimeLog> getLogWindow(final Instant from, final Instant to) {
-        return logs.stream().filter(l -> l.created_at().isAfter(from) && l.created_at().isBefore(to))
-                .collect(Collectors.toList());
+    public HierarchyReport getHierarchyReport(final Instant from, final Instant to,
+                                              final List<ReportElement> elements,
+                                              final LabelFilter labelFilter) {
+        return getHierarchyReport(from, to, elements, labelFilter, Integer.MAX_VALUE, Long.MIN_VALUE);
     }
 
-    private String createSunburst(final List<TimeLog> logs,
-                                  final List<ReportElement> elements) {
-        final HierarchyReportBuilder hierarchyReportBuilder = new HierarchyReportBuilder(elements.size());
-        logs.stream().forEach(timeLog -> {
-            final List<String> itemz = Lists.newArrayList();
-            for (ReportElement element : elements) {
-                itemz.add(getVisualizable(timeLog, element));
-            }
-            hierarchyReportBuilder.addTime(timeLog.time_spent(), itemz.toArray(new String[0]));
+    public HierarchyReport getHierarchyReport(final Instant from, final Instant to,
+                                              final List<ReportElement> elements,
+                                              final LabelFilter labelFilter,
+                                              final int maxChildren,
+                                              final long minValue) {
+        return getHierarchyReport(from, to, elements, labelFilter, maxChildren, minValue, rows -> {
         });
-        return hierarchyReportBuilder.build();
     }
 
-    private String getVisualizable(final TimeLog timeLog,
-                                   final ReportElement element) {
-        return switch (element) {
-            case ISSUE -> getIssue(timeLog).title();
-            case USER -> getUser(timeLog).name();
-            case NAMESPACE -> getNamespace(timeLog).name();
-            case PROJECT -> getProject(timeLog).name();
-            case PRODUCT -> getProduct(timeLog);
-            default -> throw new IllegalArgumentException("Unknown element " + element);
-        };
+    /**
+     * @param maxChildren children kept per node, the rest is folded into "other" node
+     * @param minValue    children with less time are folded into "other" node
+     * @param windowRows  gets the number of rows scanned
+     */
+    public HierarchyReport getHierarchyReport(final Instant from, final Instant to,
+                                              final List<ReportElement> elements,
+                                              final LabelFilter labelFilter,
+                                              final int maxChildren,
+                                              final long minValue,
+                                              final IntConsumer windowRows) {
+        // filter
+        final Slice filtered = getSlice(from, to, labelFilter);
+        windowRows.accept(filtered.window().size());
+        LOGGER.info("Processing {} {} rows", filtered.window().size(), filtered.rows() == rollup ? "rollup" : "time log");
+
+        // build
+        return createSunburst(filtered, elements, maxChildren, minValue);
+
     }
 
-    private String getProduct(final TimeLog timeLog) {
-        final Issue issue = getIssue(timeLog);
-        return issueProduct.getOrDefault(issue, UNKNOWN_PRODUCT);
+    /**
+     * number of rows a report over [from, to) scans
+     */
+    public int getWindowSize(final Instant from, final Instant to, final LabelFilter labelFilter) {
+        return getSlice(from, to, labelFilter).window().size();
     }
 
-    private User getUser(final TimeLog timeLog) {
-        return users.get(timeLog.user_id());
+    /**
+     * rows of window passing the filter, all rows when filter is null
+     */
+    private record Slice(ReportRows rows, LogWindow window, IntPredicate filter) {
+    }
+
+    private Slice getSlice(final Instant from, final Instant to) {
+        return getSlice(from, to, LabelFilter.ANY);
     }
 
-    private Issue getIssue(final TimeLog timeLog) {
-        if (timeLog.issue_id() != null) {
-            final Issue issue = issues.get(timeLog.issue_id());
-            return issue;
-        } else {
-            return issues.computeIfAbsent(Integer.MAX_VALUE, n -> MR_ISSUE);
+    /**
+     * rows to aggregate for [from, to), whole days are answered from the rollup; rollup does not know
+     * issues and merge requests of its rows, so label filtered reports read time logs
+     */
+    private Slice getSlice(final Instant from, final Instant to, final LabelFilter labelFilter) {
+        final long fromSecond = from.getEpochSecond();
+        final long toSecond = to.getEpochSecond();
+        if (!labelFilter.isAny()) {
+            return new Slice(logs, getLogWindow(from, to), labelled(labelFilter));
         }
+        if (fromSecond % SECONDS_PER_DAY == 0 && toSecond % SECONDS_PER_DAY == 0) {
+            return new Slice(rollup, rollup.window(fromSecond / SECONDS_PER_DAY, toSecond / SECONDS_PER_DAY), null);
+        }
+        return new Slice(logs, getLogWindow(from, to), null);
     }
 
-    private Project getProject(final TimeLog timeLog) {
-        if (timeLog.merge_request_id() != null) {
-            final MergeRequest mr = mergeRequests.get(timeLog.merge_request_id());
-            return projects.get(mr.target_project_id());
-        } else {
-            return projects.get(getIssue(timeLog).project_id());
+    /**
+     * time log rows passing label filter, null for filter passing everything; labels are resolved to sorted
+     * matching items once, each row is then a binary search in them
+     */
+    private IntPredicate labelled(final LabelFilter labelFilter) {
+        if (labelFilter.isAny()) {
+            return null;
         }
+        final Labels.Items items = itemLabels.items(labelFilter);
+        // logs of unknown items have no labels
+        final boolean unlabelled = labelFilter.all().isEmpty();
+        return row -> {
+            final int item = logs.item(row);
+            return item == TimeLogStore.NONE ? unlabelled : items.contains(item);
+        };
     }
 
-    private Namespace getNamespace(final TimeLog timeLog) {
-        return getNamespace(getProject(timeLog));
+    /**
+     * rows of logs created in [from, to)
+     */
+    private LogWindow getLogWindow(final Instant from, final Instant to) {
+        return logs.window(from.getEpochSecond(), to.getEpochSecond());
     }
 
-    private Namespace getNamespace(final Issue issue) {
-        return getNamespace(projects.get(issue.project_id()));
+    private HierarchyReport createSunburst(final Slice slice,
+                                           final List<ReportElement> elements,
+                                           final int maxChildren,
+                                           final long minValue) {
+        final List<IntFunction<String>> levelNames = elements.stream()
+                .map(element -> (IntFunction<String>) dictionary(element)::name)
+                .collect(Collectors.toList());
+        final ReportElement[] levels = elements.toArray(new ReportElement[0]);
+        final LogWindow window = slice.window();
+        if (window.size() < parallelThreshold) {
+            return aggregate(slice.rows(), window, slice.filter(), levels, levelNames).build(maxChildren, minValue);
+        }
+        // chunks aggregated to own partial trees on the common pool, partials merged pairwise
+        final int chunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, window.size() / MIN_CHUNK_ROWS));
+        final long chunkSize = ((long) window.size() + chunks - 1) / chunks;
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    final int from = (int) (window.from() + chunk * chunkSize);
+                    final int to = (int) Math.min(window.to(), from + chunkSize);
+                    return aggregate(slice.rows(), new LogWindow(from, to), slice.filter(), levels, levelNames);
+                })
+                .reduce(HierarchyReportBuilder::merge)
+                .orElseThrow()
+                .build(maxChildren, minValue);
     }
 
-    private Namespace getNamespace(final Project project) {
-        return namespaces.get(project.namespace_id());
+    private static HierarchyReportBuilder aggregate(final ReportRows rows,
+                                                    final LogWindow window,
+                                                    final IntPredicate filter,
+                                                    final ReportElement[] levels,
+                                                    final List<IntFunction<String>> levelNames) {
+        final HierarchyReportBuilder hierarchyReportBuilder = new HierarchyReportBuilder(levelNames);
+        final int[] path = new int[levels.length];
+        for (int row = window.from(); row < window.to(); row++) {
+            if (filter != null && !filter.test(row)) {
+                continue;
+            }
+            for (int level = 0; level < levels.length; level++) {
+                path[level] = rows.ordinal(levels[level], row);
+            }
+            hierarchyReportBuilder.addTime(rows.timeSpent(row), path);
+        }
+        return hierarchyReportBuilder;
     }
 
-    private Namespace getNamespace(final MergeRequest mr) {
-        return getNamespace(projects.get(mr.target_project_id()));
+    /**
+     * names of element values, ordinal order is name order
+     */
+    private Dictionary dictionary(final ReportElement element) {
+        return switch (element) {
+            case ISSUE -> issueTitles;
+            case USER -> userNames;
+            case NAMESPACE -> namespaceNames;
+            case PROJECT -> projectNames;
+            case PRODUCT -> productNames;
+        };
     }
 
+    private Issue getIssue(final int issueId) {
+        // tables may be read only mapped files, merge request logs get the fake issue without touching them
+        return issueId != TimeLogStore.NONE ? issues.get(issueId) : MR_ISSUE;
+    }
 
     public int getTimeLogsCount() {
         return logs.size();
     }
 
     public SXSSFWorkbook createTimesheet(final Instant from, final Instant to) throws IOException {
+        return createTimesheet(from, to, LabelFilter.ANY);
+    }
+
+    public SXSSFWorkbook createTimesheet(final Instant from, final Instant to, final LabelFilter labelFilter) throws IOException {
         // crate workbook
         final SXSSFWorkbook workbook = new SXSSFWorkbook();
         workbook.setMissingCellPolicy(Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-        // sort logs by time
-        final List<TimeLog> logWindow = getLogWindow(from, to).stream().sorted(Comparator.comparing(TimeLog::created_at)).collect(Collectors.toList());
-        // for each user
+        final CellStyle hoursStyle = workbook.createCellStyle();
+        hoursStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00"));
+        // logs are sorted by time, single pass splits them per user keeping the order
+        final Map<Integer, int[]> userLogs = groupByUser(getLogWindow(from, to), labelled(labelFilter));
+        // sheets in user order, filled one by one on this thread - workbook is not thread safe
+        final Map<Integer, String> issueCells = Maps.newHashMap();
         for (int userId : users.keySet()) {
-            // skip non existing
+            final int[] forUser = userLogs.get(userId);
+            // skip users without logs
+            if (forUser == null) {
+                continue;
+            }
             final User user = users.get(userId);
-            // user logs
-            final List<TimeLog> forUser = logWindow.stream().filter(log -> log.user_id() == userId).collect(Collectors.toList());
-            if (forUser.isEmpty()) {
+            fillTimesheet(workbook.createSheet(user.name() + " (" + user.id() + ")"), forUser, hoursStyle, issueCells);
+        }
+        return workbook;
+    }
+
+    private Map<Integer, int[]> groupByUser(final LogWindow window, final IntPredicate filter) {
+        final Map<Integer, IntStream.Builder> grouped = Maps.newHashMap();
+        for (int row = window.from(); row < window.to(); row++) {
+            if (filter != null && !filter.test(row)) {
                 continue;
             }
-            // create and fill user sheet
-            final SXSSFSheet sheet = workbook.createSheet(user.name() + " (" + user.id() + ")");
-            // header
-            sheet.createRow(0);
-            final SXSSFRow header = sheet.getRow(0);
-            header.getCell(0).setCellValue("Datum");
-            header.getCell(1).setCellValue("Hodiny");
-            header.getCell(2).setCellValue("Namespace");
-            header.getCell(3).setCellValue("Project");
-            header.getCell(4).setCellValue("Produkt");
-            header.getCell(5).setCellValue("Issue");
-            for (int i = 0; i < forUser.size(); i++) {
-                final TimeLog log = forUser.get(i);
-                final LocalDate date = log.created_at().atOffset(ZoneOffset.UTC).toLocalDate();
-                sheet.createRow(i + 1);
-                final SXSSFRow row = sheet.getRow(i + 1);
-                // day
-                row.getCell(0).setCellValue(date.toString());
-                // worked hours
-                final int time = Math.abs(log.time_spent());
-                final String timeFormat = DurationFormatUtils.formatDuration(Duration.ofSeconds(time).toMillis(), "H:mm:ss", true);
-                row.getCell(1).setCellValue(log.time_spent() < 0 ? ("-" + timeFormat) : timeFormat);
-                // namespace
-                row.getCell(2).setCellValue(getVisualizable(log, ReportElement.NAMESPACE));
-                // project
-                row.getCell(3).setCellValue(getVisualizable(log, ReportElement.PROJECT));
-                // product
-                row.getCell(4).setCellValue(getVisualizable(log, ReportElement.PRODUCT));
-                // issue
-                final Issue issue = getIssue(log);
-                row.getCell(5).setCellValue("[" + issue.id() + "] " + issue.title());
+            grouped.computeIfAbsent(logs.userId(row), id -> IntStream.builder()).add(row);
+        }
+        final Map<Integer, int[]> userLogs = Maps.newHashMapWithExpectedSize(grouped.size());
+        grouped.forEach((userId, rows) -> userLogs.put(userId, rows.build().toArray()));
+        return userLogs;
+    }
+
+    private void fillTimesheet(final SXSSFSheet sheet,
+                               final int[] forUser,
+                               final CellStyle hoursStyle,
+                               final Map<Integer, String> issueCells) {
+        // header
+        final SXSSFRow header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Datum");
+        header.createCell(1).setCellValue("Hodiny");
+        header.createCell(2).setCellValue("Namespace");
+        header.createCell(3).setCellValue("Project");
+        header.createCell(4).setCellValue("Produkt");
+        header.createCell(5).setCellValue("Issue");
+        // logs are sorted, date string is reused until day changes
+        long day = Long.MIN_VALUE;
+        String date = null;
+        for (int i = 0; i < forUser.length; i++) {
+            final int log = forUser[i];
+            final long logDay = Math.floorDiv(logs.createdAt(log), SECONDS_PER_DAY);
+            if (logDay != day) {
+                day = logDay;
+                date = LocalDate.ofEpochDay(day).toString();
             }
+            final SXSSFRow row = sheet.createRow(i + 1);
+            // day
+            row.createCell(0).setCellValue(date);
+            // worked hours
+            final SXSSFCell hours = row.createCell(1);
+            hours.setCellValue(logs.timeSpent(log) / SECONDS_PER_HOUR);
+            hours.setCellStyle(hoursStyle);
+            // namespace, project, product - dictionary names
+            row.createCell(2).setCellValue(namespaceNames.name(logs.namespace(log)));
+            row.createCell(3).setCellValue(projectNames.name(logs.project(log)));
+            row.createCell(4).setCellValue(productNames.name(logs.product(log)));
+            // issue
+            row.createCell(5).setCellValue(issueCells.computeIfAbsent(logs.issueId(log), issueId -> {
+                final Issue issue = getIssue(issueId);
+                return "[" + issue.id() + "] " + issue.title();
+            }));
         }
-        return workbook;
     }
 
     public static record DayWork(int minutes, String formatedTotalTime) {
     }
 
     public Map<LocalDate, DayWork> createCalendar(final int year, final int userId) {
+        return createCalendar(year, userId, LabelFilter.ANY);
+    }
+
+    public Map<LocalDate, DayWork> createCalendar(final int year, final int userId, final LabelFilter labelFilter) {
         final LocalDate startDay = LocalDate.of(year, 1, 1);
-        final Instant from = startDay.atStartOfDay().toInstant(ZoneOffset.UTC);
-        final LocalDate endDay = startDay.plusYears(1).minusDays(1);
-        final Instant to = endDay.plusDays(1).atStartOfDay().minusSeconds(1).toInstant(ZoneOffset.UTC);
-        // put work to calendar
-        final Map<LocalDate, Integer> calendar = Maps.newTreeMap();
-        getLogWindow(from, to).stream()
-                .filter(l -> l.user_id() == userId)
-                .forEach(log -> {
-                    final LocalDate logDay = log.created_at().atOffset(ZoneOffset.UTC).toLocalDate();
-                    calendar.compute(logDay, (day, time) -> time == null ? log.time_spent() : time + log.time_spent());
-                });
-        startDay.datesUntil(startDay.plusYears(1)).forEach(day -> {
-            calendar.computeIfAbsent(day, d -> 0);
-        });
+        // only days of the user are touched
+        final int[] calendar = labelFilter.isAny()
+                ? userDays.daySums(userId, startDay.toEpochDay(), startDay.lengthOfYear())
+                : labelledDaySums(new int[]{userId}, startDay.toEpochDay(), startDay.lengthOfYear(), labelFilter)[0];
         final Map<LocalDate, DayWork> formated = Maps.newLinkedHashMap();
-        calendar.forEach((d, t) -> {
+        for (int i = 0; i < calendar.length; i++) {
+            final int t = calendar[i];
             final int time = Math.abs(t);
             final String timeFormat = DurationFormatUtils.formatDuration(Duration.ofSeconds(time).toMillis(), "H:mm:ss", true);
             final String tm = t < 0 ? ("-" + timeFormat) : timeFormat;
-            formated.put(d, new DayWork(t / 60, tm));
-        });
+            formated.put(startDay.plusDays(i), new DayWork(t / 60, tm));
+        }
         return formated;
     }
+
+    /**
+     * worked minutes per day, {@code minutes[i][d]} belongs to {@code users[i]} and day {@code from + d}
+     */
+    public static record CalendarMatrix(LocalDate from, int[] users, int[][] minutes) {
+    }
+
+    /**
+     * calendars of many users for days in [from, to), all known users when {@code userIds} is null
+     */
+    public CalendarMatrix createCalendars(final LocalDate from, final LocalDate to, final int[] userIds) {
+        return createCalendars(from, to, userIds, LabelFilter.ANY);
+    }
+
+    public CalendarMatrix createCalendars(final LocalDate from, final LocalDate to, final int[] userIds, final LabelFilter labelFilter) {
+        final long days = to.toEpochDay() - from.toEpochDay();
+        Preconditions.checkArgument(days > 0 && days <= MAX_CALENDAR_DAYS, "Invalid calendar range %s - %s", from, to);
+        final int[] forUsers = userIds != null ? userIds : users.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        final int[][] labelled = labelFilter.isAny() ? null : labelledDaySums(forUsers, from.toEpochDay(), (int) days, labelFilter);
+        final int[][] minutes = new int[forUsers.length][];
+        for (int i = 0; i < forUsers.length; i++) {
+            final int[] sums = labelled != null ? labelled[i] : userDays.daySums(forUsers[i], from.toEpochDay(), (int) days);
+            for (int d = 0; d < sums.length; d++) {
+                sums[d] /= 60;
+            }
+            minutes[i] = sums;
+        }
+        return new CalendarMatrix(from, forUsers, minutes);
+    }
+
+    /**
+     * time spent per user and day by logs passing label filter, one scan of time logs of the days
+     */
+    private int[][] labelledDaySums(final int[] forUsers, final long fromDay, final int days, final LabelFilter labelFilter) {
+        final int[][] sums = new int[forUsers.length][days];
+        final Map<Integer, Integer> userIndex = Maps.newHashMapWithExpectedSize(forUsers.length);
+        for (int i = 0; i < forUsers.length; i++) {
+            userIndex.putIfAbsent(forUsers[i], i);
+        }
+        final IntPredicate filter = labelled(labelFilter);
+        final LogWindow window = logs.window(fromDay * SECONDS_PER_DAY, (fromDay + days) * SECONDS_PER_DAY);
+        for (int row = window.from(); row < window.to(); row++) {
+            final Integer user = userIndex.get(logs.userId(row));
+            if (user != null && filter.test(row)) {
+                sums[user][(int) (Math.floorDiv(logs.createdAt(row), SECONDS_PER_DAY) - fromDay)] += logs.timeSpent(row);
+            }
+        }
+        // duplicate ids get the same calendar
+        for (int i = 0; i < forUsers.length; i++) {
+            final int first = userIndex.get(forUsers[i]);
+            if (first != i) {
+                sums[i] = sums[first].clone();
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * time spent per element value and bucket, {@code values[i][b]} belongs to {@code names[i]} and bucket
+     * starting at {@code starts[b]}; values without time in the range are left out
+     */
+    public static record TimeSeries(LocalDate[] starts, String[] names, long[][] values) {
+    }
+
+    /**
+     * seconds spent per value of element in buckets covering [from, to), first and last bucket are cut to the range;
+     * every bucket is difference of two running sums, no logs are scanned
+     */
+    public TimeSeries createTimeSeries(final ReportElement element, final LocalDate from, final LocalDate to, final TimeBucket bucket) {
+        final long days = to.toEpochDay() - from.toEpochDay();
+        Preconditions.checkArgument(days > 0 && days <= MAX_CALENDAR_DAYS, "Invalid time series range %s - %s", from, to);
+        final List<LocalDate> starts = new ArrayList<>();
+        for (LocalDate start = from; start.isBefore(to); start = bucket.next(bucket.start(start))) {
+            starts.add(start);
+        }
+        final long[] bounds = new long[starts.size() + 1];
+        for (int b = 0; b < starts.size(); b++) {
+            bounds[b] = starts.get(b).toEpochDay();
+        }
+        bounds[starts.size()] = to.toEpochDay();
+        final DayTotals totals = dayTotals.get(element);
+        final Dictionary names = dictionary(element);
+        final List<String> seriesNames = new ArrayList<>();
+        final List<long[]> seriesValues = new ArrayList<>();
+        for (int slot = 0; slot < totals.slots(); slot++) {
+            final long[] sums = totals.sums(slot, bounds);
+            if (Arrays.stream(sums).anyMatch(sum -> sum != 0)) {
+                seriesNames.add(names.name(DayTotals.ordinal(slot)));
+                seriesValues.add(sums);
+            }
+        }
+        return new TimeSeries(starts.toArray(new LocalDate[0]), seriesNames.toArray(new String[0]), seriesValues.toArray(new long[0][]));
+    }
+
+    /**
+     * values of element with time spent, largest first; {@code parent} is null for ungrouped ranking
+     */
+    public static record Ranking(String parent, long parentTime, String[] names, long[] times) {
+    }
+
+    /**
+     * top {@code n} values of element by time spent in [from, to), one ranking per value of {@code parent} element
+     * (largest parents first) or a single one when parent is null; sums are primitive, only n values per ranking are kept
+     *
+     * @param windowRows gets the number of rows scanned
+     */
+    public List<Ranking> getTop(final Instant from,
+                                final Instant to,
+                                final ReportElement element,
+                                final ReportElement parent,
+                                final int n,
+                                final LabelFilter labelFilter,
+                                final IntConsumer windowRows) {
+        final Slice slice = getSlice(from, to, labelFilter);
+        windowRows.accept(slice.window().size());
+        final ReportRows rows = slice.rows();
+        final IntPredicate filter = slice.filter();
+        final LogWindow window = slice.window();
+        final Dictionary names = dictionary(element);
+        final int childSlots = names.size() + 1;
+        if (parent == null) {
+            final long[] sums = new long[childSlots];
+            for (int row = window.from(); row < window.to(); row++) {
+                if (filter == null || filter.test(row)) {
+                    sums[DayTotals.slot(rows.ordinal(element, row))] += rows.timeSpent(row);
+                }
+            }
+            final int[] top = TopN.top(sums, 0, childSlots, n);
+            return List.of(ranking(null, Arrays.stream(sums).sum(), top, sums, slot -> names.name(DayTotals.ordinal(slot))));
+        }
+        // (parent, child) pairs are sparse - summed in hash table, then grouped by parent
+        final TopN.SumTable pairs = new TopN.SumTable();
+        for (int row = window.from(); row < window.to(); row++) {
+            if (filter == null || filter.test(row)) {
+                final long key = (long) DayTotals.slot(rows.ordinal(parent, row)) * childSlots + DayTotals.slot(rows.ordinal(element, row));
+                pairs.add(key, rows.timeSpent(row));
+            }
+        }
+        final long[] keys = new long[pairs.size()];
+        final long[] sums = new long[pairs.size()];
+        pairs.entries(keys, sums);
+        final Dictionary parentNames = dictionary(parent);
+        final int parentSlots = parentNames.size() + 1;
+        final int[] start = new int[parentSlots + 1];
+        for (long key : keys) {
+            start[(int) (key / childSlots) + 1]++;
+        }
+        for (int p = 0; p < parentSlots; p++) {
+            start[p + 1] += start[p];
+        }
+        final int[] next = Arrays.copyOf(start, parentSlots);
+        final long[] groupedKeys = new long[keys.length];
+        final long[] groupedSums = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            final int at = next[(int) (keys[i] / childSlots)]++;
+            groupedKeys[at] = keys[i];
+            groupedSums[at] = sums[i];
+        }
+        final List<Ranking> rankings = new ArrayList<>();
+        for (int p = 0; p < parentSlots; p++) {
+            if (start[p] == start[p + 1]) {
+                continue;
+            }
+            final int[] top = TopN.top(groupedSums, groupedKeys, start[p], start[p + 1], n);
+            final long parentTime = Arrays.stream(groupedSums, start[p], start[p + 1]).sum();
+            rankings.add(ranking(parentNames.name(DayTotals.ordinal(p)), parentTime, top, groupedSums,
+                    at -> names.name(DayTotals.ordinal((int) (groupedKeys[at] % childSlots)))));
+        }
+        rankings.sort(Comparator.comparingLong(Ranking::parentTime).reversed());
+        return rankings;
+    }
+
+    private static Ranking ranking(final String parent,
+                                   final long parentTime,
+                                   final int[] top,
+                                   final long[] sums,
+                                   final IntFunction<String> name) {
+        final String[] names = new String[top.length];
+        final long[] times = new long[top.length];
+        for (int i = 0; i < top.length; i++) {
+            names[i] = name.apply(top[i]);
+            times[i] = sums[top[i]];
+        }
+        return new Ranking(parent, parentTime, names, times);
+    }
 }
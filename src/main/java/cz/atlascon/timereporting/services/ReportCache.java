@@ -0,0 +1,91 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * reports of current data version, bounded by total weight of cached reports,
+ * all entries are dropped when new data is imported
+ */
+@Named
+public class ReportCache {
+
+    private final DataService dataService;
+    private final Cache<Key, Weighted> cache;
+
+    @Inject
+    public ReportCache(final DataService dataService,
+                       @Value("${timereporting.cache.size-mb:64}") final long sizeMb,
+                       final Metrics metrics) {
+        this.dataService = dataService;
+        // weights are approximate bytes, latin text takes a byte per char
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(sizeMb << 20)
+                .weigher((Key key, Weighted report) -> report.weight())
+                .recordStats()
+                .build();
+        dataService.addVersionListener(version -> cache.invalidateAll());
+        metrics.gauge("cache.hit.ratio", () -> cache.stats().hitRate());
+        metrics.gauge("cache.hits", () -> cache.stats().hitCount());
+        metrics.gauge("cache.misses", () -> cache.stats().missCount());
+        metrics.gauge("cache.evictions", () -> cache.stats().evictionCount());
+        metrics.gauge("cache.entries", cache::size);
+    }
+
+    private record Key(long version, String endpoint, Map<String, List<String>> params) {
+    }
+
+    private record Weighted(Object report, int weight) {
+    }
+
+    /**
+     * cached rendered report of current data, weight is its length
+     */
+    public String get(final String endpoint,
+                      final Map<String, List<String>> params,
+                      final Function<Processor, String> report) {
+        return get(endpoint, params, report, String::length);
+    }
+
+    /**
+     * cached report of current data, computed by {@code report} on miss, one computation per key at a time;
+     * endpoint has to always produce the same report type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final String endpoint,
+                     final Map<String, List<String>> params,
+                     final Function<Processor, T> report,
+                     final ToIntFunction<T> weigher) {
+        // version first - processor can only be the same or newer
+        final long version = dataService.getDataVersion();
+        final Processor processor = dataService.getProcessor();
+        final Key key = new Key(version, endpoint, new TreeMap<>(params));
+        try {
+            final T value = (T) cache.get(key, () -> {
+                final T computed = report.apply(processor);
+                return new Weighted(computed, weigher.applyAsInt(computed));
+            }).report();
+            // import finished meanwhile, its invalidation may have run before the entry was put
+            if (dataService.getDataVersion() != version) {
+                cache.invalidate(key);
+            }
+            return value;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+}
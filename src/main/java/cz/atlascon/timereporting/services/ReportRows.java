@@ -0,0 +1,37 @@
+package cz.atlascon.timereporting.services;
+
+/**
+ * rows which can be broken down by {@link ReportElement}, missing ids / ordinals are {@link TimeLogStore#NONE}
+ */
+public interface ReportRows {
+
+    /**
+     * dictionary ordinal of element value in given row
+     */
+    default int ordinal(final ReportElement element, final int row) {
+        return switch (element) {
+            case NAMESPACE -> namespace(row);
+            case PROJECT -> project(row);
+            case PRODUCT -> product(row);
+            case ISSUE -> issue(row);
+            case USER -> user(row);
+        };
+    }
+
+    int timeSpent(int row);
+
+    int userId(int row);
+
+    int issueId(int row);
+
+    int project(int row);
+
+    int namespace(int row);
+
+    int product(int row);
+
+    int issue(int row);
+
+    int user(int row);
+
+}
@@ -0,0 +1,282 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.collect.Maps;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * time spent summed per (day, user, issue, project, namespace, product), rows are sorted by day;
+ * columns are heap arrays or memory mapped files, as given by {@link Storage}
+ */
+public abstract class Rollup implements ReportRows {
+
+    private static final long SECONDS_PER_DAY = 86_400L;
+    // day, time spent, ids of user and issue and five ordinals
+    private static final int ROW_BYTES = Long.BYTES + 8 * Integer.BYTES;
+
+    private final int size;
+
+    private Rollup(final int size) {
+        this.size = size;
+    }
+
+    public static Rollup build(final TimeLogStore logs, final Storage storage) {
+        final Map<Cell, int[]> cells = Maps.newHashMap();
+        final Columns columns = new Columns(storage, Math.max(16, logs.size() / 8));
+        long currentDay = Long.MIN_VALUE;
+        for (int row = 0; row < logs.size(); row++) {
+            final long logDay = Math.floorDiv(logs.createdAt(row), SECONDS_PER_DAY);
+            if (logDay != currentDay) {
+                columns.flush(currentDay, cells);
+                currentDay = logDay;
+            }
+            final Cell cell = new Cell(logs.userId(row), logs.issueId(row), logs.project(row), logs.namespace(row), logs.product(row),
+                    logs.issue(row), logs.user(row));
+            cells.computeIfAbsent(cell, c -> new int[1])[0] += logs.timeSpent(row);
+        }
+        columns.flush(currentDay, cells);
+        final int size = columns.day.size();
+        final LongBuffer day = columns.day.finish();
+        final IntBuffer[] ints = columns.ints.stream().map(IntColumn::finish).toArray(IntBuffer[]::new);
+        if (day.hasArray()) {
+            return new Heap(size, day.array(), ints[0].array(), ints[1].array(), ints[2].array(), ints[3].array(),
+                    ints[4].array(), ints[5].array(), ints[6].array(), ints[7].array());
+        }
+        return new Mapped(size, day, ints[0], ints[1], ints[2], ints[3], ints[4], ints[5], ints[6], ints[7]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * approximate size of the columns in bytes, on heap or mapped
+     */
+    public long weight() {
+        return (long) size * ROW_BYTES;
+    }
+
+    /**
+     * rows of days in [fromDay, toDay), found by binary search
+     */
+    public LogWindow window(final long fromDay, final long toDay) {
+        final int start = lowerBound(fromDay);
+        return new LogWindow(start, Math.max(start, lowerBound(toDay)));
+    }
+
+    private int lowerBound(final long epochDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (day(mid) < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // epoch day
+    public abstract long day(int row);
+
+    private static final class Heap extends Rollup {
+
+        private final long[] day;
+        private final int[] timeSpent;
+        private final int[] userId;
+        private final int[] issueId;
+        private final int[] project;
+        private final int[] namespace;
+        private final int[] product;
+        private final int[] issue;
+        private final int[] user;
+
+        private Heap(final int size,
+                     final long[] day,
+                     final int[] timeSpent,
+                     final int[] userId,
+                     final int[] issueId,
+                     final int[] project,
+                     final int[] namespace,
+                     final int[] product,
+                     final int[] issue,
+                     final int[] user) {
+            super(size);
+            this.day = day;
+            this.timeSpent = timeSpent;
+            this.userId = userId;
+            this.issueId = issueId;
+            this.project = project;
+            this.namespace = namespace;
+            this.product = product;
+            this.issue = issue;
+            this.user = user;
+        }
+
+        @Override
+        public long day(final int row) {
+            return day[row];
+        }
+
+        @Override
+        public int timeSpent(final int row) {
+            return timeSpent[row];
+        }
+
+        @Override
+        public int userId(final int row) {
+            return userId[row];
+        }
+
+        @Override
+        public int issueId(final int row) {
+            return issueId[row];
+        }
+
+        @Override
+        public int project(final int row) {
+            return project[row];
+        }
+
+        @Override
+        public int namespace(final int row) {
+            return namespace[row];
+        }
+
+        @Override
+        public int product(final int row) {
+            return product[row];
+        }
+
+        @Override
+        public int issue(final int row) {
+            return issue[row];
+        }
+
+        @Override
+        public int user(final int row) {
+            return user[row];
+        }
+    }
+
+    private static final class Mapped extends Rollup {
+
+        private final LongBuffer day;
+        private final IntBuffer timeSpent;
+        private final IntBuffer userId;
+        private final IntBuffer issueId;
+        private final IntBuffer project;
+        private final IntBuffer namespace;
+        private final IntBuffer product;
+        private final IntBuffer issue;
+        private final IntBuffer user;
+
+        private Mapped(final int size,
+                       final LongBuffer day,
+                       final IntBuffer timeSpent,
+                       final IntBuffer userId,
+                       final IntBuffer issueId,
+                       final IntBuffer project,
+                       final IntBuffer namespace,
+                       final IntBuffer product,
+                       final IntBuffer issue,
+                       final IntBuffer user) {
+            super(size);
+            this.day = day;
+            this.timeSpent = timeSpent;
+            this.userId = userId;
+            this.issueId = issueId;
+            this.project = project;
+            this.namespace = namespace;
+            this.product = product;
+            this.issue = issue;
+            this.user = user;
+        }
+
+        @Override
+        public long day(final int row) {
+            return day.get(row);
+        }
+
+        @Override
+        public int timeSpent(final int row) {
+            return timeSpent.get(row);
+        }
+
+        @Override
+        public int userId(final int row) {
+            return userId.get(row);
+        }
+
+        @Override
+        public int issueId(final int row) {
+            return issueId.get(row);
+        }
+
+        @Override
+        public int project(final int row) {
+            return project.get(row);
+        }
+
+        @Override
+        public int namespace(final int row) {
+            return namespace.get(row);
+        }
+
+        @Override
+        public int product(final int row) {
+            return product.get(row);
+        }
+
+        @Override
+        public int issue(final int row) {
+            return issue.get(row);
+        }
+
+        @Override
+        public int user(final int row) {
+            return user.get(row);
+        }
+    }
+
+    // issue / user ordinals follow from the ids, they do not split cells
+    private record Cell(int userId, int issueId, int project, int namespace, int product, int issue, int user) {
+    }
+
+    private static class Columns {
+
+        private final LongColumn day;
+        // time spent, user id, issue id and the ordinals, in constructor order of Heap / Mapped
+        private final List<IntColumn> ints;
+
+        private Columns(final Storage storage, final int capacity) {
+            this.day = storage.longs("rollup.day", capacity);
+            this.ints = Stream.of("time_spent", "user_id", "issue_id", "project", "namespace", "product", "issue", "user")
+                    .map(name -> storage.ints("rollup." + name, capacity))
+                    .collect(Collectors.toList());
+        }
+
+        private void flush(final long epochDay, final Map<Cell, int[]> cells) {
+            cells.forEach((cell, time) -> {
+                day.add(epochDay);
+                ints.get(0).add(time[0]);
+                ints.get(1).add(cell.userId());
+                ints.get(2).add(cell.issueId());
+                ints.get(3).add(cell.project());
+                ints.get(4).add(cell.namespace());
+                ints.get(5).add(cell.product());
+                ints.get(6).add(cell.issue());
+                ints.get(7).add(cell.user());
+            });
+            cells.clear();
+        }
+    }
+
+}
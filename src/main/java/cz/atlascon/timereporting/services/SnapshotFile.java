@@ -0,0 +1,295 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingOutputStream;
+import cz.atlascon.timereporting.domain.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * binary snapshot of imported data, so restart does not need the export zip again
+ * <p>
+ * header - magic, format version, payload length, payload crc32; payload - time log columns followed by
+ * dimension tables, strings are length prefixed UTF-8, missing ints are {@link TimeLogStore#NONE};
+ * payload length is not limited, it is read as a stream and checksummed on the way, counts and lengths
+ * are bounded by the payload so corrupted ones fail before allocation
+ * <p>
+ * load of 2M time logs (56MB) on one core takes ~0.1s for the read and ~2.2s heap / ~2.5s mapped for
+ * {@link Processor} to rebuild rollup, indexes and labels, those are not stored
+ */
+public class SnapshotFile {
+
+    private static final int MAGIC = 0x474c5452; // GLTR
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES;
+    private static final long NO_INSTANT = Long.MIN_VALUE;
+    // longer than any GitLab text
+    private static final int MAX_STRING_BYTES = 64 << 20;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * write to temp file next to target and atomically move it over
+     */
+    public static void write(final Processor processor, final Path file) throws IOException {
+        final Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        final Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_BYTES);
+            final CRC32 crc = new CRC32();
+            // DataOutputStream#size() stops at 2GB
+            final CountingOutputStream counting = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(counting, crc));
+            writePayload(processor, out);
+            out.flush();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(counting.getCount())
+                    .putLong(crc.getValue())
+                    .flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ExportData read(final Path file) throws IOException {
+        return read(file, Storage.HEAP);
+    }
+
+    /**
+     * verify and read snapshot, time logs and large tables go straight to given storage;
+     * throws {@link IOException} for unknown version or corrupted content
+     */
+    public static ExportData read(final Path file, final Storage storage) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("Invalid snapshot size " + fileSize);
+            }
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file " + file);
+            }
+            final int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            final long length = header.getLong();
+            final long checksum = header.getLong();
+            if (length != fileSize - HEADER_BYTES) {
+                throw new IOException("Truncated snapshot, expected " + length + " payload bytes");
+            }
+            final CRC32 crc = new CRC32();
+            final DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(HEADER_BYTES)), 1 << 16), crc));
+            final ExportData data;
+            try {
+                data = readPayload(in, storage, length);
+            } catch (RuntimeException | EOFException e) {
+                throw new IOException("Corrupted snapshot", e);
+            }
+            // whole payload is read, caller discards storage of a mismatch
+            if (crc.getValue() != checksum) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            return data;
+        }
+    }
+
+    static final RowCodec<Namespace> NAMESPACES = new RowCodec<>((out, n) -> {
+        out.writeInt(n.id());
+        writeString(out, n.name());
+        writeString(out, n.description());
+    }, in -> new Namespace(in.readInt(), readString(in), readString(in)));
+    static final RowCodec<Label> LABELS = new RowCodec<>((out, l) -> {
+        out.writeInt(l.id());
+        writeString(out, l.title());
+        writeString(out, l.color());
+        writeString(out, l.description());
+    }, in -> new Label(in.readInt(), readString(in), readString(in), readString(in)));
+    static final RowCodec<User> USERS = new RowCodec<>((out, u) -> {
+        out.writeInt(u.id());
+        writeString(out, u.email());
+        writeString(out, u.name());
+    }, in -> new User(in.readInt(), readString(in), readString(in)));
+    static final RowCodec<Project> PROJECTS = new RowCodec<>((out, p) -> {
+        out.writeInt(p.id());
+        writeString(out, p.name());
+        writeString(out, p.description());
+        out.writeInt(p.namespace_id());
+    }, in -> new Project(in.readInt(), readString(in), readString(in), in.readInt()));
+    static final RowCodec<Issue> ISSUES = new RowCodec<>((out, i) -> {
+        writeInt(out, i.id());
+        writeInt(out, i.author_id());
+        writeInt(out, i.project_id());
+        writeInstant(out, i.created_at());
+        writeString(out, i.title());
+        writeString(out, i.description());
+    }, in -> new Issue(readInt(in), readInt(in), readInt(in), readInstant(in), readString(in), readString(in)));
+    static final RowCodec<MergeRequest> MERGE_REQUESTS = new RowCodec<>((out, mr) -> {
+        writeInt(out, mr.id());
+        writeInt(out, mr.author_id());
+        writeInt(out, mr.target_project_id());
+        writeString(out, mr.target_branch());
+        writeString(out, mr.source_branch());
+        writeInstant(out, mr.created_at());
+        writeString(out, mr.title());
+    }, in -> new MergeRequest(readInt(in), readInt(in), readInt(in), readString(in), readString(in), readInstant(in), readString(in)));
+    static final RowCodec<LabelLink> LABEL_LINKS = new RowCodec<>((out, ll) -> {
+        out.writeInt(ll.id());
+        out.writeInt(ll.label_id());
+        out.writeInt(ll.target_id());
+        out.writeInt(ll.target_type() == null ? -1 : ll.target_type().ordinal());
+    }, in -> {
+        final int id = in.readInt();
+        final int labelId = in.readInt();
+        final int targetId = in.readInt();
+        final int type = in.readInt();
+        return new LabelLink(id, labelId, targetId, type < 0 ? null : LabelLink.Type.values()[type]);
+    });
+
+    // straight from processor columns and tables, mapped data is not copied to heap
+    private static void writePayload(final Processor processor, final DataOutputStream out) throws IOException {
+        processor.logs().write(out);
+        writeTable(out, processor.namespaces().values(), NAMESPACES);
+        writeTable(out, processor.labels().values(), LABELS);
+        writeTable(out, processor.users().values(), USERS);
+        writeTable(out, processor.projects().values(), PROJECTS);
+        writeTable(out, processor.issues().values(), ISSUES);
+        writeTable(out, processor.mergeRequests().values(), MERGE_REQUESTS);
+        writeTable(out, processor.labelLinks(), LABEL_LINKS);
+    }
+
+    private static ExportData readPayload(final DataInputStream in, final Storage storage, final long length) throws IOException {
+        final ExportData data = new ExportData(TimeLogStore.Builder.read(in, storage, length),
+                readTable(in, NAMESPACES, Namespace::id, Maps.newHashMap()),
+                readTable(in, LABELS, Label::id, Maps.newHashMap()),
+                readTable(in, USERS, User::id, Maps.newHashMap()),
+                readTable(in, PROJECTS, Project::id, storage.table("projects", PROJECTS)),
+                readTable(in, ISSUES, Issue::id, storage.table("issues", ISSUES)),
+                readTable(in, MERGE_REQUESTS, MergeRequest::id, storage.table("merge_requests", MERGE_REQUESTS)),
+                readList(in, LABEL_LINKS, length));
+        Preconditions.checkState(in.read() < 0, "Trailing bytes");
+        return data;
+    }
+
+    interface RowWriter<E> {
+        void write(DataOutputStream out, E row) throws IOException;
+    }
+
+    interface RowReader<E> {
+        E read(DataInput in) throws IOException;
+    }
+
+    /**
+     * binary form of one table row
+     */
+    record RowCodec<E>(RowWriter<E> writer, RowReader<E> reader) {
+    }
+
+    private static <E> void writeTable(final DataOutputStream out,
+                                       final Collection<E> rows,
+                                       final RowCodec<E> codec) throws IOException {
+        out.writeInt(rows.size());
+        for (E row : rows) {
+            codec.writer().write(out, row);
+        }
+    }
+
+    private static <E> Map<Integer, E> readTable(final DataInput in,
+                                                 final RowCodec<E> codec,
+                                                 final Function<E, Integer> id,
+                                                 final Map<Integer, E> table) throws IOException {
+        final int size = in.readInt();
+        Preconditions.checkState(size >= 0, "Negative table size %s", size);
+        for (int i = 0; i < size; i++) {
+            final E row = codec.reader().read(in);
+            table.put(id.apply(row), row);
+        }
+        return table;
+    }
+
+    private static <E> List<E> readList(final DataInput in, final RowCodec<E> codec, final long length) throws IOException {
+        final int size = in.readInt();
+        Preconditions.checkState(size >= 0 && size <= length / Integer.BYTES, "Invalid table size %s", size);
+        final List<E> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(codec.reader().read(in));
+        }
+        return rows;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        Preconditions.checkState(length <= MAX_STRING_BYTES, "Invalid string length %s", length);
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInt(final DataOutputStream out, final Integer value) throws IOException {
+        out.writeInt(value == null ? TimeLogStore.NONE : value);
+    }
+
+    private static Integer readInt(final DataInput in) throws IOException {
+        final int value = in.readInt();
+        return value == TimeLogStore.NONE ? null : value;
+    }
+
+    private static void writeInstant(final DataOutputStream out, final Instant value) throws IOException {
+        out.writeLong(value == null ? NO_INSTANT : value.getEpochSecond());
+        out.writeInt(value == null ? 0 : value.getNano());
+    }
+
+    private static Instant readInstant(final DataInput in) throws IOException {
+        final long seconds = in.readLong();
+        final int nanos = in.readInt();
+        return seconds == NO_INSTANT ? null : Instant.ofEpochSecond(seconds, nanos);
+    }
+
+}
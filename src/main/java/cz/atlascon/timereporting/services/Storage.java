@@ -0,0 +1,114 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * where one generation of imported data is kept - {@link #HEAP} arrays and hash maps, or files in a directory
+ * of its own, see {@link #mapped(Path)}; time log columns and large tables are appended to the files while
+ * parsing and building and only then mapped, so mapped data never has to fit on heap as a whole
+ */
+public class Storage {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Storage.class);
+
+    public static final Storage HEAP = new Storage(null);
+
+    // mapped files, null when on heap
+    private final Path dir;
+    // files being written, closed when import fails
+    private final Queue<Closeable> writers = new ConcurrentLinkedQueue<>();
+
+    private Storage(final Path dir) {
+        this.dir = dir;
+    }
+
+    public static Storage mapped(final Path dir) throws IOException {
+        return new Storage(Files.createDirectories(dir));
+    }
+
+    /**
+     * directory of mapped files, null for heap
+     */
+    public Path dir() {
+        return dir;
+    }
+
+    public IntColumn ints(final String name, final int expectedSize) {
+        return dir == null ? IntColumn.heap(expectedSize) : IntColumn.mapped(column(dir.resolve(name + ".col")));
+    }
+
+    public LongColumn longs(final String name, final int expectedSize) {
+        return dir == null ? LongColumn.heap(expectedSize) : LongColumn.mapped(column(dir.resolve(name + ".col")));
+    }
+
+    /**
+     * file of a mapped column, closed with other writers when import fails
+     */
+    ColumnFile column(final Path file) {
+        return track(new ColumnFile(file));
+    }
+
+    /**
+     * id keyed table filled by {@link Map#put}, read only after {@link #finish(Map)}
+     */
+    <V> Map<Integer, V> table(final String name, final SnapshotFile.RowCodec<V> codec) {
+        return dir == null ? Maps.newHashMap() : track(new MappedTable.Writer<>(this, dir.resolve(name), codec));
+    }
+
+    /**
+     * read only view of a filled table, mapped tables are written and mapped here
+     */
+    static <V> Map<Integer, V> finish(final Map<Integer, V> table) {
+        return table instanceof MappedTable.Writer ? ((MappedTable.Writer<V>) table).finish() : Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * drop column no longer needed, mapping of it stays valid until unmapped by gc
+     */
+    public void remove(final String name) {
+        if (dir != null) {
+            try {
+                Files.deleteIfExists(dir.resolve(name + ".col"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private <T extends Closeable> T track(final T writer) {
+        writers.add(writer);
+        return writer;
+    }
+
+    /**
+     * close files left unfinished by failed import, finished ones are closed already
+     */
+    public void closeWriters() {
+        for (Closeable writer : writers) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close {}", writer, e);
+            }
+        }
+        writers.clear();
+    }
+
+    @Override
+    public String toString() {
+        return dir == null ? "heap" : dir.toString();
+    }
+
+}
@@ -0,0 +1,42 @@
+package cz.atlascon.timereporting.services;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * calendar buckets of time series, weeks start on monday
+ */
+public enum TimeBucket {
+
+    DAY,
+    WEEK,
+    MONTH,
+    QUARTER;
+
+    /**
+     * first day of bucket containing given day
+     */
+    public LocalDate start(final LocalDate day) {
+        return switch (this) {
+            case DAY -> day;
+            case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> day.withDayOfMonth(1);
+            case QUARTER -> day.with(IsoFields.DAY_OF_QUARTER, 1);
+        };
+    }
+
+    /**
+     * first day of bucket following the one starting at given day
+     */
+    public LocalDate next(final LocalDate start) {
+        return switch (this) {
+            case DAY -> start.plusDays(1);
+            case WEEK -> start.plusWeeks(1);
+            case MONTH -> start.plusMonths(1);
+            case QUARTER -> start.plusMonths(3);
+        };
+    }
+
+}
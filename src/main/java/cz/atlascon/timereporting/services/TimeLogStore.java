@@ -0,0 +1,595 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Preconditions;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * columnar time log storage - one primitive column per attribute, row index is shared by all columns,
+ * rows are sorted by creation time; columns are heap arrays or memory mapped files, as given by {@link Storage}
+ */
+public abstract class TimeLogStore implements ReportRows {
+
+    /**
+     * sentinel for missing ids / ordinals
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+    // bytes of column decoded at once when reading a stream
+    private static final int READ_CHUNK = 1 << 16;
+    // builder columns, replaced by sorted ones unless already in order
+    private static final String RAW = "import.";
+    // id, created at, ids of user, issue and merge request, time spent and six ordinals
+    private static final int ROW_BYTES = Long.BYTES + 11 * Integer.BYTES;
+    // id, created at, time spent and ids of user, issue and merge request as written
+    private static final int SOURCE_ROW_BYTES = Long.BYTES + 5 * Integer.BYTES;
+
+    private final int size;
+    // newest updated_at of all rows, epoch seconds
+    private final long lastUpdatedAt;
+
+    /**
+     * ordinal of one dimension resolved from ids of a log
+     */
+    @FunctionalInterface
+    public interface Dimension {
+        int ordinal(int userId, int issueId, int mergeRequestId);
+    }
+
+    private TimeLogStore(final int size, final long lastUpdatedAt) {
+        this.size = size;
+        this.lastUpdatedAt = lastUpdatedAt;
+    }
+
+    private static TimeLogStore build(final Builder builder,
+                                      final Dimension project,
+                                      final Dimension namespace,
+                                      final Dimension product,
+                                      final Dimension issue,
+                                      final Dimension user,
+                                      final Dimension item) {
+        final Storage storage = builder.storage;
+        final int size = builder.size;
+        final Raw raw = builder.raw();
+        final int[] order = sortedOrder(raw.createdAt(), size);
+        final LongBuffer createdAt;
+        if (order == null) {
+            createdAt = raw.createdAt();
+        } else {
+            final LongColumn sorted = storage.longs("logs.created_at", size);
+            for (int row : order) {
+                sorted.add(raw.createdAt().get(row));
+            }
+            storage.remove(RAW + "created_at");
+            createdAt = sorted.finish();
+        }
+        final IntBuffer id = permute(storage, "id", raw.id(), order);
+        final IntBuffer timeSpent = permute(storage, "time_spent", raw.timeSpent(), order);
+        final IntBuffer userId = permute(storage, "user_id", raw.userId(), order);
+        final IntBuffer issueId = permute(storage, "issue_id", raw.issueId(), order);
+        final IntBuffer mergeRequestId = permute(storage, "merge_request_id", raw.mergeRequestId(), order);
+        final IntBuffer[] ordinals = new IntBuffer[6];
+        final List<Dimension> dimensions = List.of(project, namespace, product, issue, user, item);
+        final List<String> names = List.of("project", "namespace", "product", "issue", "user", "item");
+        for (int d = 0; d < ordinals.length; d++) {
+            final Dimension dimension = dimensions.get(d);
+            final IntColumn column = storage.ints("logs." + names.get(d), size);
+            for (int row = 0; row < size; row++) {
+                column.add(dimension.ordinal(userId.get(row), issueId.get(row), mergeRequestId.get(row)));
+            }
+            ordinals[d] = column.finish();
+        }
+        if (id.hasArray()) {
+            return new Heap(size, builder.lastUpdatedAt, id.array(), createdAt.array(), timeSpent.array(), userId.array(),
+                    issueId.array(), mergeRequestId.array(), ordinals[0].array(), ordinals[1].array(), ordinals[2].array(),
+                    ordinals[3].array(), ordinals[4].array(), ordinals[5].array());
+        }
+        return new Mapped(size, builder.lastUpdatedAt, id, createdAt, timeSpent, userId, issueId, mergeRequestId,
+                ordinals[0], ordinals[1], ordinals[2], ordinals[3], ordinals[4], ordinals[5]);
+    }
+
+    /**
+     * stable order of rows by creation time, null when rows are in order already
+     */
+    private static int[] sortedOrder(final LongBuffer createdAt, final int size) {
+        long min = size == 0 ? 0 : createdAt.get(0);
+        long max = min;
+        boolean sorted = true;
+        for (int row = 1; row < size; row++) {
+            final long value = createdAt.get(row);
+            sorted &= createdAt.get(row - 1) <= value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        if (sorted) {
+            return null;
+        }
+        if (max - min > Integer.MAX_VALUE) {
+            return IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingLong(createdAt::get))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        // (time offset, row) packed to one long, row breaks ties
+        final long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = ((createdAt.get(row) - min) << 32) | row;
+        }
+        Arrays.parallelSort(keys);
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private static IntBuffer permute(final Storage storage, final String name, final IntBuffer column, final int[] order) {
+        if (order == null) {
+            return column;
+        }
+        final IntColumn sorted = storage.ints("logs." + name, order.length);
+        for (int row : order) {
+            sorted.add(column.get(row));
+        }
+        storage.remove(RAW + name);
+        return sorted.finish();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * approximate size of the columns in bytes, on heap or mapped
+     */
+    public long weight() {
+        return (long) size * ROW_BYTES;
+    }
+
+    public long lastUpdatedAt() {
+        return lastUpdatedAt;
+    }
+
+    /**
+     * builder in {@code storage} holding the rows whose id passes the filter, ordinals are resolved again on build
+     */
+    public Builder toBuilder(final Storage storage, final IntPredicate keepId) {
+        final Builder builder = new Builder(storage, size);
+        builder.lastUpdatedAt = lastUpdatedAt;
+        for (int row = 0; row < size; row++) {
+            if (keepId.test(id(row))) {
+                builder.add(id(row), createdAt(row), Long.MIN_VALUE, timeSpent(row), userId(row), issueId(row), mergeRequestId(row));
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * source columns one after another, read back by {@link Builder#read(DataInput, Storage, long)}
+     */
+    public void write(final DataOutput out) throws IOException {
+        out.writeLong(lastUpdatedAt);
+        out.writeInt(size);
+        for (int row = 0; row < size; row++) {
+            out.writeInt(id(row));
+        }
+        for (int row = 0; row < size; row++) {
+            out.writeLong(createdAt(row));
+        }
+        for (int row = 0; row < size; row++) {
+            out.writeInt(timeSpent(row));
+        }
+        for (int row = 0; row < size; row++) {
+            out.writeInt(userId(row));
+        }
+        for (int row = 0; row < size; row++) {
+            out.writeInt(issueId(row));
+        }
+        for (int row = 0; row < size; row++) {
+            out.writeInt(mergeRequestId(row));
+        }
+    }
+
+    /**
+     * rows created in [from, to) epoch seconds, found by binary search
+     */
+    public LogWindow window(final long from, final long to) {
+        final int start = lowerBound(from);
+        return new LogWindow(start, Math.max(start, lowerBound(to)));
+    }
+
+    /**
+     * first row created at or after given epoch second
+     */
+    private int lowerBound(final long epochSecond) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (createdAt(mid) < epochSecond) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public abstract int id(int row);
+
+    public abstract long createdAt(int row);
+
+    public abstract int mergeRequestId(int row);
+
+    // dense issue / merge request ordinal, see Labels#item
+    public abstract int item(int row);
+
+    private static final class Heap extends TimeLogStore {
+
+        private final int[] id;
+        // epoch seconds
+        private final long[] createdAt;
+        private final int[] timeSpent;
+        private final int[] userId;
+        private final int[] issueId;
+        private final int[] mergeRequestId;
+        // dimension ordinals
+        private final int[] project;
+        private final int[] namespace;
+        private final int[] product;
+        private final int[] issue;
+        private final int[] user;
+        private final int[] item;
+
+        private Heap(final int size,
+                     final long lastUpdatedAt,
+                     final int[] id,
+                     final long[] createdAt,
+                     final int[] timeSpent,
+                     final int[] userId,
+                     final int[] issueId,
+                     final int[] mergeRequestId,
+                     final int[] project,
+                     final int[] namespace,
+                     final int[] product,
+                     final int[] issue,
+                     final int[] user,
+                     final int[] item) {
+            super(size, lastUpdatedAt);
+            this.id = id;
+            this.createdAt = createdAt;
+            this.timeSpent = timeSpent;
+            this.userId = userId;
+            this.issueId = issueId;
+            this.mergeRequestId = mergeRequestId;
+            this.project = project;
+            this.namespace = namespace;
+            this.product = product;
+            this.issue = issue;
+            this.user = user;
+            this.item = item;
+        }
+
+        @Override
+        public int id(final int row) {
+            return id[row];
+        }
+
+        @Override
+        public long createdAt(final int row) {
+            return createdAt[row];
+        }
+
+        @Override
+        public int timeSpent(final int row) {
+            return timeSpent[row];
+        }
+
+        @Override
+        public int userId(final int row) {
+            return userId[row];
+        }
+
+        @Override
+        public int issueId(final int row) {
+            return issueId[row];
+        }
+
+        @Override
+        public int mergeRequestId(final int row) {
+            return mergeRequestId[row];
+        }
+
+        @Override
+        public int project(final int row) {
+            return project[row];
+        }
+
+        @Override
+        public int namespace(final int row) {
+            return namespace[row];
+        }
+
+        @Override
+        public int product(final int row) {
+            return product[row];
+        }
+
+        @Override
+        public int issue(final int row) {
+            return issue[row];
+        }
+
+        @Override
+        public int user(final int row) {
+            return user[row];
+        }
+
+        @Override
+        public int item(final int row) {
+            return item[row];
+        }
+    }
+
+    private static final class Mapped extends TimeLogStore {
+
+        private final IntBuffer id;
+        // epoch seconds
+        private final LongBuffer createdAt;
+        private final IntBuffer timeSpent;
+        private final IntBuffer userId;
+        private final IntBuffer issueId;
+        private final IntBuffer mergeRequestId;
+        // dimension ordinals
+        private final IntBuffer project;
+        private final IntBuffer namespace;
+        private final IntBuffer product;
+        private final IntBuffer issue;
+        private final IntBuffer user;
+        private final IntBuffer item;
+
+        private Mapped(final int size,
+                       final long lastUpdatedAt,
+                       final IntBuffer id,
+                       final LongBuffer createdAt,
+                       final IntBuffer timeSpent,
+                       final IntBuffer userId,
+                       final IntBuffer issueId,
+                       final IntBuffer mergeRequestId,
+                       final IntBuffer project,
+                       final IntBuffer namespace,
+                       final IntBuffer product,
+                       final IntBuffer issue,
+                       final IntBuffer user,
+                       final IntBuffer item) {
+            super(size, lastUpdatedAt);
+            this.id = id;
+            this.createdAt = createdAt;
+            this.timeSpent = timeSpent;
+            this.userId = userId;
+            this.issueId = issueId;
+            this.mergeRequestId = mergeRequestId;
+            this.project = project;
+            this.namespace = namespace;
+            this.product = product;
+            this.issue = issue;
+            this.user = user;
+            this.item = item;
+        }
+
+        @Override
+        public int id(final int row) {
+            return id.get(row);
+        }
+
+        @Override
+        public long createdAt(final int row) {
+            return createdAt.get(row);
+        }
+
+        @Override
+        public int timeSpent(final int row) {
+            return timeSpent.get(row);
+        }
+
+        @Override
+        public int userId(final int row) {
+            return userId.get(row);
+        }
+
+        @Override
+        public int issueId(final int row) {
+            return issueId.get(row);
+        }
+
+        @Override
+        public int mergeRequestId(final int row) {
+            return mergeRequestId.get(row);
+        }
+
+        @Override
+        public int project(final int row) {
+            return project.get(row);
+        }
+
+        @Override
+        public int namespace(final int row) {
+            return namespace.get(row);
+        }
+
+        @Override
+        public int product(final int row) {
+            return product.get(row);
+        }
+
+        @Override
+        public int issue(final int row) {
+            return issue.get(row);
+        }
+
+        @Override
+        public int user(final int row) {
+            return user.get(row);
+        }
+
+        @Override
+        public int item(final int row) {
+            return item.get(row);
+        }
+    }
+
+    // builder columns once finished
+    private record Raw(IntBuffer id,
+                       LongBuffer createdAt,
+                       IntBuffer timeSpent,
+                       IntBuffer userId,
+                       IntBuffer issueId,
+                       IntBuffer mergeRequestId) {
+    }
+
+    /**
+     * rows in import order, appended straight to columns of given {@link Storage}
+     */
+    public static class Builder {
+
+        private final Storage storage;
+        private int size;
+        private long lastUpdatedAt = Long.MIN_VALUE;
+        private final IntColumn id;
+        private final LongColumn createdAt;
+        private final IntColumn timeSpent;
+        private final IntColumn userId;
+        private final IntColumn issueId;
+        private final IntColumn mergeRequestId;
+        private Raw raw;
+
+        public Builder(final int expectedSize) {
+            this(Storage.HEAP, expectedSize);
+        }
+
+        public Builder(final Storage storage, final int expectedSize) {
+            this.storage = storage;
+            this.id = storage.ints(RAW + "id", expectedSize);
+            this.createdAt = storage.longs(RAW + "created_at", expectedSize);
+            this.timeSpent = storage.ints(RAW + "time_spent", expectedSize);
+            this.userId = storage.ints(RAW + "user_id", expectedSize);
+            this.issueId = storage.ints(RAW + "issue_id", expectedSize);
+            this.mergeRequestId = storage.ints(RAW + "merge_request_id", expectedSize);
+        }
+
+        public Builder add(final int id,
+                           final long createdAt,
+                           final long updatedAt,
+                           final int timeSpent,
+                           final int userId,
+                           final int issueId,
+                           final int mergeRequestId) {
+            Preconditions.checkState(raw == null, "Builder already finished");
+            this.lastUpdatedAt = Math.max(lastUpdatedAt, updatedAt);
+            this.id.add(id);
+            this.createdAt.add(createdAt);
+            this.timeSpent.add(timeSpent);
+            this.userId.add(userId);
+            this.issueId.add(issueId);
+            this.mergeRequestId.add(mergeRequestId);
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private Raw raw() {
+            if (raw == null) {
+                raw = new Raw(id.finish(), createdAt.finish(), timeSpent.finish(), userId.finish(), issueId.finish(),
+                        mergeRequestId.finish());
+            }
+            return raw;
+        }
+
+        /**
+         * adds rows of other builder, which cannot be added to afterwards
+         */
+        public Builder addAll(final Builder other) {
+            final Raw rows = other.raw();
+            for (int i = 0; i < other.size; i++) {
+                add(rows.id().get(i), rows.createdAt().get(i), Long.MIN_VALUE, rows.timeSpent().get(i), rows.userId().get(i),
+                        rows.issueId().get(i), rows.mergeRequestId().get(i));
+            }
+            lastUpdatedAt = Math.max(lastUpdatedAt, other.lastUpdatedAt);
+            return this;
+        }
+
+        /**
+         * ids of all rows, nothing can be added afterwards
+         */
+        public IntStream ids() {
+            final IntBuffer ids = raw().id();
+            return IntStream.range(0, size).map(ids::get);
+        }
+
+        /**
+         * rows written by {@link TimeLogStore#write(DataOutput)}, appended to columns of given storage;
+         * count of rows over what fits in {@code maxBytes} fails before columns are allocated
+         */
+        public static Builder read(final DataInput in, final Storage storage, final long maxBytes) throws IOException {
+            final long lastUpdatedAt = in.readLong();
+            final int size = in.readInt();
+            Preconditions.checkState(size >= 0 && (long) size * SOURCE_ROW_BYTES <= maxBytes, "Invalid time log count %s", size);
+            final Builder builder = new Builder(storage, size);
+            builder.size = size;
+            builder.lastUpdatedAt = lastUpdatedAt;
+            final byte[] chunk = new byte[READ_CHUNK];
+            readInts(in, chunk, builder.id, size);
+            for (int from = 0; from < size; ) {
+                final int n = Math.min(size - from, READ_CHUNK / Long.BYTES);
+                in.readFully(chunk, 0, n * Long.BYTES);
+                final ByteBuffer values = ByteBuffer.wrap(chunk);
+                for (int i = 0; i < n; i++) {
+                    builder.createdAt.add(values.getLong());
+                }
+                from += n;
+            }
+            for (IntColumn column : List.of(builder.timeSpent, builder.userId, builder.issueId, builder.mergeRequestId)) {
+                readInts(in, chunk, column, size);
+            }
+            return builder;
+        }
+
+        private static void readInts(final DataInput in, final byte[] chunk, final IntColumn column, final int size) throws IOException {
+            for (int from = 0; from < size; ) {
+                final int n = Math.min(size - from, chunk.length / Integer.BYTES);
+                in.readFully(chunk, 0, n * Integer.BYTES);
+                final ByteBuffer values = ByteBuffer.wrap(chunk);
+                for (int i = 0; i < n; i++) {
+                    column.add(values.getInt());
+                }
+                from += n;
+            }
+        }
+
+        /**
+         * sort rows by time and resolve dimension ordinals from (user id, issue id, merge request id),
+         * nothing can be added afterwards
+         */
+        public TimeLogStore build(final Dimension project,
+                                  final Dimension namespace,
+                                  final Dimension product,
+                                  final Dimension issue,
+                                  final Dimension user,
+                                  final Dimension item) {
+            return TimeLogStore.build(this, project, namespace, product, issue, user, item);
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Preconditions;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * limits number of timesheets generated at once, each holds its rows in SXSSF temp files while written out
+ */
+@Named
+public class TimesheetService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimesheetService.class);
+
+    private final Semaphore permits;
+
+    @Inject
+    public TimesheetService(@Value("${timereporting.timesheet.concurrency:2}") final int concurrency) {
+        Preconditions.checkArgument(concurrency > 0, "Timesheet concurrency must be positive, got %s", concurrency);
+        this.permits = new Semaphore(concurrency);
+    }
+
+    /**
+     * reserve one of concurrent timesheets, empty when limit is reached; the workbook is generated only when
+     * written, permit is released once written or closed, whichever comes first
+     */
+    public Optional<Timesheet> reserve(final Processor processor,
+                                       final Instant from,
+                                       final Instant to,
+                                       final LabelFilter labelFilter) {
+        if (!permits.tryAcquire()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Timesheet(processor, from, to, labelFilter));
+    }
+
+    private static void dispose(final SXSSFWorkbook workbook) {
+        if (!workbook.dispose()) {
+            LOGGER.warn("Unable to delete timesheet temp files");
+        }
+        try {
+            workbook.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close timesheet", e);
+        }
+    }
+
+    /**
+     * reserved timesheet, close it when it may not be written, e.g. for HEAD request or failed response
+     */
+    public class Timesheet implements Closeable {
+
+        private final Processor processor;
+        private final Instant from;
+        private final Instant to;
+        private final LabelFilter labelFilter;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Timesheet(final Processor processor, final Instant from, final Instant to, final LabelFilter labelFilter) {
+            this.processor = processor;
+            this.from = from;
+            this.to = to;
+            this.labelFilter = labelFilter;
+        }
+
+        /**
+         * generate xlsx, write it to {@code out} and close; temp files are deleted in any case
+         */
+        public void writeTo(final OutputStream out) throws IOException {
+            Preconditions.checkState(!closed.get(), "Timesheet already closed");
+            SXSSFWorkbook workbook = null;
+            try {
+                workbook = processor.createTimesheet(from, to, labelFilter);
+                workbook.write(out);
+            } finally {
+                if (workbook != null) {
+                    dispose(workbook);
+                }
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+}
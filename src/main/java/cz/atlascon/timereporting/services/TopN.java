@@ -0,0 +1,160 @@
+package cz.atlascon.timereporting.services;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * selection of largest sums - bounded min heap of candidate positions, so picking n of m sums takes
+ * O(m log n) time and O(n) memory, nothing else is sorted
+ */
+public final class TopN {
+
+    private TopN() {
+    }
+
+    /**
+     * positions of at most {@code n} largest non zero sums in [from, to), largest first, ties in position order
+     */
+    public static int[] top(final long[] sums, final int from, final int to, final int n) {
+        return top(sums, null, from, to, n);
+    }
+
+    /**
+     * positions of at most {@code n} largest non zero sums in [from, to), largest first, ties in {@code ties} order
+     */
+    public static int[] top(final long[] sums, final long[] ties, final int from, final int to, final int n) {
+        Preconditions.checkArgument(n > 0, "n must be positive, got %s", n);
+        // heap[0] is the worst of kept positions
+        final int[] heap = new int[Math.min(n, to - from)];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            if (sums[i] == 0) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(sums, ties, heap, size++);
+            } else if (better(sums, ties, i, heap[0])) {
+                heap[0] = i;
+                siftDown(sums, ties, heap, size);
+            }
+        }
+        // pop worst first, fill from the end
+        final int[] top = new int[size];
+        for (int k = size - 1; k >= 0; k--) {
+            top[k] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(sums, ties, heap, size);
+        }
+        return top;
+    }
+
+    private static boolean better(final long[] sums, final long[] ties, final int a, final int b) {
+        return sums[a] > sums[b] || (sums[a] == sums[b] && (ties == null ? a < b : ties[a] < ties[b]));
+    }
+
+    private static void siftUp(final long[] sums, final long[] ties, final int[] heap, final int index) {
+        int child = index;
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (!better(sums, ties, heap[parent], heap[child])) {
+                break;
+            }
+            swap(heap, parent, child);
+            child = parent;
+        }
+    }
+
+    private static void siftDown(final long[] sums, final long[] ties, final int[] heap, final int size) {
+        int parent = 0;
+        while (true) {
+            final int left = 2 * parent + 1;
+            if (left >= size) {
+                return;
+            }
+            final int right = left + 1;
+            final int worse = right < size && better(sums, ties, heap[left], heap[right]) ? right : left;
+            if (!better(sums, ties, heap[parent], heap[worse])) {
+                return;
+            }
+            swap(heap, parent, worse);
+            parent = worse;
+        }
+    }
+
+    private static void swap(final int[] heap, final int a, final int b) {
+        final int tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+
+    /**
+     * sums of non negative long keys in flat open addressing table
+     */
+    public static class SumTable {
+
+        // key + 1, 0 = empty slot
+        private long[] keys = new long[1024];
+        private long[] sums = new long[1024];
+        private int size;
+
+        public void add(final long key, final long value) {
+            final long stored = key + 1;
+            final int mask = keys.length - 1;
+            int slot = hash(stored) & mask;
+            while (keys[slot] != 0 && keys[slot] != stored) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] != 0) {
+                sums[slot] += value;
+                return;
+            }
+            keys[slot] = stored;
+            sums[slot] = value;
+            if (++size * 2 > keys.length) {
+                rehash();
+            }
+        }
+
+        private static int hash(final long key) {
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private void rehash() {
+            final long[] oldKeys = keys;
+            final long[] oldSums = sums;
+            keys = new long[oldKeys.length * 2];
+            sums = new long[oldSums.length * 2];
+            final int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    sums[slot] = oldSums[i];
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * keys and sums of all entries, {@code keys[i]} has sum {@code sums[i]}, in no particular order
+         */
+        public void entries(final long[] keysOut, final long[] sumsOut) {
+            int i = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    keysOut[i] = keys[slot] - 1;
+                    sumsOut[i++] = sums[slot];
+                }
+            }
+            Preconditions.checkState(i == size);
+        }
+    }
+
+}
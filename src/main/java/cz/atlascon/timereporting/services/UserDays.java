@@ -0,0 +1,102 @@
+package cz.atlascon.timereporting.services;
+
+import java.util.Arrays;
+
+/**
+ * time spent per (user, day), days of one user are adjacent and sorted, so calendar of a user is
+ * a binary search and a scan of its own days only
+ */
+public class UserDays {
+
+    // sorted user ids, days of users[i] are rows [offsets[i], offsets[i + 1])
+    private final int[] users;
+    private final int[] offsets;
+    private final int[] day;
+    private final int[] timeSpent;
+
+    public UserDays(final Rollup rollup) {
+        // distinct users, rollup rows per user
+        final int[] rowUsers = new int[rollup.size()];
+        for (int row = 0; row < rollup.size(); row++) {
+            rowUsers[row] = rollup.userId(row);
+        }
+        this.users = Arrays.stream(rowUsers).distinct().sorted().toArray();
+        final int[] start = new int[users.length + 1];
+        for (int userId : rowUsers) {
+            start[userIndex(userId) + 1]++;
+        }
+        for (int i = 0; i < users.length; i++) {
+            start[i + 1] += start[i];
+        }
+        // rollup is sorted by day, stable scatter keeps days of each user sorted
+        final int[] next = Arrays.copyOf(start, users.length);
+        final int[] rows = new int[rollup.size()];
+        for (int row = 0; row < rollup.size(); row++) {
+            rows[next[userIndex(rowUsers[row])]++] = row;
+        }
+        // sum cells of the same user and day
+        this.offsets = new int[users.length + 1];
+        final int[] days = new int[rows.length];
+        final int[] sums = new int[rows.length];
+        int size = 0;
+        for (int i = 0; i < users.length; i++) {
+            offsets[i] = size;
+            for (int r = start[i]; r < start[i + 1]; r++) {
+                final int rowDay = Math.toIntExact(rollup.day(rows[r]));
+                if (size == offsets[i] || days[size - 1] != rowDay) {
+                    days[size++] = rowDay;
+                }
+                sums[size - 1] += rollup.timeSpent(rows[r]);
+            }
+        }
+        offsets[users.length] = size;
+        this.day = Arrays.copyOf(days, size);
+        this.timeSpent = Arrays.copyOf(sums, size);
+    }
+
+    private int userIndex(final int userId) {
+        return Arrays.binarySearch(users, userId);
+    }
+
+    public int size() {
+        return day.length;
+    }
+
+    /**
+     * approximate heap size in bytes
+     */
+    public long weight() {
+        return 4L * (users.length + offsets.length + day.length + timeSpent.length);
+    }
+
+    /**
+     * time spent by user on each of {@code days} days from {@code fromDay}, zero for days without logs
+     */
+    public int[] daySums(final int userId, final long fromDay, final int days) {
+        final int[] sums = new int[days];
+        final int user = userIndex(userId);
+        if (user < 0) {
+            return sums;
+        }
+        final int end = offsets[user + 1];
+        for (int row = lowerBound(offsets[user], end, fromDay); row < end && day[row] < fromDay + days; row++) {
+            sums[(int) (day[row] - fromDay)] = timeSpent[row];
+        }
+        return sums;
+    }
+
+    private int lowerBound(final int from, final int to, final long epochDay) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (day[mid] < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,158 @@
+package cz.atlascon.timereporting;
+
+import cz.atlascon.timereporting.services.TimeLogStore;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
+import static java.time.format.DateTimeFormatter.ISO_LOCAL_TIME;
+
+/**
+ * synthetic timelogs.csv read by {@link Parser#timeLogs} ({@code parser*}) and by the formatter /
+ * {@link Integer#parseInt(String)} based reader it replaced ({@code formatter*}); {@code *Csv} includes csv
+ * decoding, {@code *Timestamp} and {@code *Int} time the cell conversions alone
+ * <p>
+ * run with {@code java -cp <test classpath> cz.atlascon.timereporting.ParserBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final DateTimeFormatter FORMATTER = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .append(ISO_LOCAL_DATE)
+            .appendLiteral(' ')
+            .append(ISO_LOCAL_TIME)
+            .toFormatter();
+
+    @Param("200000")
+    private int rows;
+    private String csv;
+    // cells of the csv, as csv parser hands them out
+    private String[] timestamps;
+    private String[] ints;
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ParserBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(2);
+        final StringBuilder csv = new StringBuilder("id,time_spent,user_id,created_at,updated_at,issue_id,merge_request_id\n");
+        final LocalDateTime start = LocalDateTime.of(2015, 1, 1, 0, 0);
+        timestamps = new String[rows];
+        ints = new String[rows];
+        for (int id = 1; id <= rows; id++) {
+            final LocalDateTime created = start.plusSeconds(random.nextInt(200_000_000)).plusNanos(random.nextInt(1_000_000) * 1_000L);
+            final boolean mergeRequest = random.nextInt(10) == 0;
+            final String issueId = Integer.toString(1 + random.nextInt(100_000));
+            timestamps[id - 1] = FORMATTER.format(created);
+            ints[id - 1] = issueId;
+            csv.append(id).append(',')
+                    .append(60 * (1 + random.nextInt(480))).append(',')
+                    .append(1 + random.nextInt(200)).append(',')
+                    .append(timestamps[id - 1]).append(',')
+                    .append(FORMATTER.format(created.plusMinutes(random.nextInt(600)))).append(',')
+                    .append(mergeRequest ? "" : issueId).append(',')
+                    .append(mergeRequest ? Integer.toString(1 + random.nextInt(20_000)) : "").append('\n');
+        }
+        this.csv = csv.toString();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TimeLogStore.Builder parserCsv() throws IOException {
+        final TimeLogStore.Builder logs = new TimeLogStore.Builder(rows);
+        read(header -> new Parser(header).timeLogs(logs));
+        return logs;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TimeLogStore.Builder formatterCsv() throws IOException {
+        final TimeLogStore.Builder logs = new TimeLogStore.Builder(rows);
+        read(header -> record -> logs.add(
+                Integer.parseInt(record.get("id")),
+                LocalDateTime.from(FORMATTER.parse(record.get("created_at"))).toEpochSecond(ZoneOffset.UTC),
+                LocalDateTime.from(FORMATTER.parse(record.get("updated_at"))).toEpochSecond(ZoneOffset.UTC),
+                Integer.parseInt(record.get("time_spent")),
+                Integer.parseInt(record.get("user_id")),
+                record.get("issue_id").isBlank() ? TimeLogStore.NONE : Integer.parseInt(record.get("issue_id")),
+                record.get("merge_request_id").isBlank() ? TimeLogStore.NONE : Integer.parseInt(record.get("merge_request_id"))));
+        return logs;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void parserTimestamp(final Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(Parser.parseEpochSecond(timestamp));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void formatterTimestamp(final Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(LocalDateTime.from(FORMATTER.parse(timestamp)).toEpochSecond(ZoneOffset.UTC));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void parserInt(final Blackhole blackhole) {
+        for (String num : ints) {
+            blackhole.consume(Parser.parseInt(num));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void formatterInt(final Blackhole blackhole) {
+        for (String num : ints) {
+            blackhole.consume(Integer.parseInt(num));
+        }
+    }
+
+    private void read(final Function<Map<String, Integer>, Consumer<CSVRecord>> reader) throws IOException {
+        try (CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(new StringReader(csv))) {
+            final Consumer<CSVRecord> sink = reader.apply(parser.getHeaderMap());
+            for (CSVRecord record : parser) {
+                sink.accept(record);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package cz.atlascon.timereporting;
+
+import cz.atlascon.timereporting.services.ExportData;
+import cz.atlascon.timereporting.services.Processor;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
+import static java.time.format.DateTimeFormatter.ISO_LOCAL_TIME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * fast paths of {@link Parser} against {@link DateTimeFormatter} / {@link Integer#parseInt(String)}
+ */
+class ParserTest {
+
+    // the one parser used before the fast path
+    private static final DateTimeFormatter FORMATTER = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .append(ISO_LOCAL_DATE)
+            .appendLiteral(' ')
+            .append(ISO_LOCAL_TIME)
+            .toFormatter();
+
+    @Test
+    void randomTimestamps() {
+        final Random random = new Random(4);
+        for (int i = 0; i < 200_000; i++) {
+            final String val = String.format("%04d-%02d-%02d %02d:%02d:%02d%s",
+                    random.nextInt(10_000), 1 + random.nextInt(12), 1 + random.nextInt(31),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60), fraction(random, random.nextInt(10)));
+            assertSameAsFormatter(val);
+        }
+    }
+
+    @Test
+    void leapDaysAndCenturies() {
+        for (String val : List.of("2020-02-29 12:00:00", "2019-02-29 12:00:00", "2000-02-29 00:00:00", "1900-02-29 00:00:00",
+                "2100-02-29 00:00:00", "2400-02-29 23:59:59", "1600-02-29 00:00:00", "0000-02-29 00:00:00",
+                "2000-03-01 00:00:00", "1900-03-01 00:00:00", "2100-12-31 23:59:59", "1970-01-01 00:00:00",
+                "1969-12-31 23:59:59", "0000-01-01 00:00:00", "9999-12-31 23:59:59.999999")) {
+            assertSameAsFormatter(val);
+        }
+    }
+
+    @Test
+    void fractions() {
+        final Random random = new Random(6);
+        for (int digits = 1; digits <= 9; digits++) {
+            for (int i = 0; i < 1_000; i++) {
+                assertSameAsFormatter("2020-07-14 08:15:42" + fraction(random, digits));
+            }
+        }
+    }
+
+    @Test
+    void fallbackInputs() {
+        for (String val : List.of("2020-07-01 10:00", "2020-07-01 10:00:00.", "2020-07-01 10:00:00.1234567890",
+                "2020-7-01 10:00:00", "2020-07-01T10:00:00", "2020-07-01 24:00:00", "2020-07-01 10:60:00",
+                "2020-13-01 10:00:00", "2020-00-01 10:00:00", "2020-04-31 10:00:00", "2020-07-00 10:00:00",
+                "+12020-07-01 10:00:00", "2020-07-01  10:00:00", "2020-07-01 10:00:00 ", "x020-07-01 10:00:00", "")) {
+            assertSameAsFormatter(val);
+        }
+    }
+
+    @Test
+    void ints() {
+        for (String val : List.of("0", "7", "-7", "-0", "007", "123456789", "999999999", "-999999999", "1000000000",
+                "2147483647", "-2147483648", "2147483648", "-2147483649", "9999999999", "+5", "+", "-", "",
+                "12a", "1 2", " 12", "٣")) {
+            assertEquals(outcome(() -> Integer.parseInt(val)), outcome(() -> Parser.parseInt(val)), val);
+        }
+        final Random random = new Random(8);
+        for (int i = 0; i < 100_000; i++) {
+            final String val = Integer.toString(random.nextInt() >> random.nextInt(32));
+            assertEquals(Integer.parseInt(val), Parser.parseInt(val), val);
+        }
+    }
+
+    @Test
+    void blankUpdatedAt() throws IOException {
+        // never updated rows don't move last update
+        assertEquals(Instant.parse("2020-07-02T08:00:00Z"), lastUpdatedAt("""
+                id,time_spent,user_id,created_at,updated_at,issue_id,merge_request_id
+                1,3600,1,2020-07-01 10:00:00,,1,
+                2,3600,1,2020-07-01 11:00:00,2020-07-02 08:00:00,1,
+                3,3600,1,2020-07-03 10:00:00,,,2
+                """));
+        assertNull(lastUpdatedAt("""
+                id,time_spent,user_id,created_at,updated_at,issue_id,merge_request_id
+                1,3600,1,2020-07-01 10:00:00, ,1,
+                """));
+    }
+
+    private static Instant lastUpdatedAt(final String csv) throws IOException {
+        final ExportData data = ExportData.empty();
+        try (CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(new StringReader(csv))) {
+            final Consumer<CSVRecord> sink = new Parser(parser.getHeaderMap()).timeLogs(data.logs());
+            parser.forEach(sink);
+        }
+        return new Processor(data, Integer.MAX_VALUE).getLastUpdatedAt();
+    }
+
+    private static String fraction(final Random random, final int digits) {
+        final StringBuilder fraction = new StringBuilder(digits == 0 ? "" : ".");
+        for (int d = 0; d < digits; d++) {
+            fraction.append(random.nextInt(10));
+        }
+        return fraction.toString();
+    }
+
+    private static void assertSameAsFormatter(final String val) {
+        assertEquals(outcome(() -> LocalDateTime.from(FORMATTER.parse(val)).toEpochSecond(ZoneOffset.UTC)),
+                outcome(() -> Parser.parseEpochSecond(val)), val);
+        assertEquals(outcome(() -> LocalDateTime.from(FORMATTER.parse(val)).toInstant(ZoneOffset.UTC)),
+                outcome(() -> Parser.parseInstant(val)), val);
+    }
+
+    /**
+     * result or type of exception
+     */
+    private static Object outcome(final Callable<?> parse) {
+        try {
+            return parse.call();
+        } catch (Exception e) {
+            return e.getClass();
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package cz.atlascon.timereporting.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataServiceTest {
+
+    private static final LocalDate FROM = LocalDate.of(2020, 1, 1);
+    private static final int DAYS = 60;
+    private static final int READERS = 4;
+    private static final int IMPORTS = 4;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readersOfHeapSnapshotDuringImports() throws Exception {
+        readersDuringImports("heap");
+    }
+
+    @Test
+    void readersOfMappedSnapshotDuringImports() throws Exception {
+        // files of the snapshot being read stay until it is unreachable
+        readersDuringImports("mapped");
+    }
+
+    private void readersDuringImports(final String storage) throws Exception {
+        final Path first = dir.resolve("first.zip");
+        final Path second = dir.resolve("second.zip");
+        TestData.zip(new Processor(TestData.export(1, 100_000, FROM, DAYS), Integer.MAX_VALUE), first);
+        TestData.zip(new Processor(TestData.export(2, 120_000, FROM, DAYS), Integer.MAX_VALUE), second);
+        final DataService service = new DataService("", storage, dir.resolve("storage").toString(), Integer.MAX_VALUE, new Metrics());
+        final ExecutorService readers = Executors.newFixedThreadPool(READERS);
+        try {
+            service.importFromFile(first.toFile());
+            final Processor snapshot = service.getProcessor();
+            final List<Object> expected = reports(snapshot);
+            final AtomicBoolean importing = new AtomicBoolean(true);
+            final AtomicInteger reads = new AtomicInteger();
+            final List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < READERS; i++) {
+                running.add(readers.submit(() -> {
+                    do {
+                        // held snapshot never changes, current one is always complete
+                        assertEquals(expected, reports(snapshot));
+                        reports(service.getProcessor());
+                        reads.incrementAndGet();
+                    } while (importing.get());
+                    return null;
+                }));
+            }
+            // ends with the first export again
+            for (int i = 0; i < IMPORTS; i++) {
+                service.importFromFile((i % 2 == 0 ? second : first).toFile());
+            }
+            importing.set(false);
+            for (Future<?> reader : running) {
+                reader.get();
+            }
+            assertTrue(reads.get() >= READERS);
+            assertNotSame(snapshot, service.getProcessor());
+            assertTrue(snapshot.getStorageDir() == null || Files.isDirectory(snapshot.getStorageDir()));
+            assertEquals(expected, reports(service.getProcessor()));
+        } finally {
+            readers.shutdownNow();
+            service.shutdown();
+        }
+    }
+
+    private static List<Object> reports(final Processor processor) {
+        final Instant from = FROM.atStartOfDay().toInstant(ZoneOffset.UTC);
+        final Instant to = from.plusSeconds(DAYS * 86_400L);
+        return List.of(
+                json(processor.getHierarchyReport(from, to, List.of(ReportElement.PROJECT, ReportElement.ISSUE, ReportElement.USER))),
+                json(processor.getHierarchyReport(from.plusSeconds(3600), to, List.of(ReportElement.PRODUCT, ReportElement.USER),
+                        LabelFilter.of(List.of("Label-1"), List.of()))),
+                processor.getComponents(from, to),
+                processor.createCalendar(2020, 1));
+    }
+
+    private static String json(final HierarchyReport report) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            report.write(out, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+}
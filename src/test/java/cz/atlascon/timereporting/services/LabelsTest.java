@@ -0,0 +1,37 @@
+package cz.atlascon.timereporting.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LabelsTest {
+
+    @Test
+    void itemsSameAsSortedArray() {
+        final Random random = new Random(3);
+        // small and dense sets are bitmaps, large sparse ones hash tables
+        for (int width : new int[]{1, 1_000, 100_000, 5_000_000}) {
+            for (int count : new int[]{0, 1, 7, 500, 20_000}) {
+                final int[] sorted = IntStream.generate(() -> random.nextInt(width)).limit(count).sorted().distinct().toArray();
+                for (boolean complement : new boolean[]{false, true}) {
+                    final Labels.Items items = new Labels.Items(sorted, complement);
+                    for (int i = 0; i < 20_000; i++) {
+                        // members, their neighbours and anything up to past the width
+                        final int item = i % 2 == 0 && sorted.length > 0
+                                ? sorted[random.nextInt(sorted.length)] + random.nextInt(3) - 1
+                                : random.nextInt(width + 10);
+                        if (item >= 0) {
+                            assertEquals(Arrays.binarySearch(sorted, item) >= 0 != complement, items.contains(item),
+                                    () -> "item " + item + " of " + sorted.length + " in " + width + " complement " + complement);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package cz.atlascon.timereporting.services;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * latency of multi year hierarchy report aggregated on one thread and in parallel chunks on the common pool,
+ * cores used are set by common pool parallelism - compare runs with 1, 4 and 16
+ * <p>
+ * run with {@code java -Xmx4g -Djava.util.concurrent.ForkJoinPool.common.parallelism=4 -cp <test classpath>
+ * cz.atlascon.timereporting.services.ParallelBenchmark [logs]}
+ */
+public class ParallelBenchmark {
+
+    private static final int DAYS = 3 * 365;
+    private static final int WARMUP = 5;
+    private static final int RUNS = 15;
+    private static final LocalDate FROM = LocalDate.of(2010, 1, 1);
+    private static final List<ReportElement> ELEMENTS = List.of(ReportElement.PROJECT, ReportElement.ISSUE, ReportElement.USER);
+
+    public static void main(final String[] args) {
+        final int logs = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        // whole window shifted by an hour, so time logs are scanned instead of the rollup
+        final Instant from = FROM.atStartOfDay().toInstant(ZoneOffset.UTC).plusSeconds(3600);
+        final Instant to = from.plusSeconds(DAYS * 86_400L);
+        final Processor processor = new Processor(TestData.export(1, logs, FROM, DAYS), Integer.MAX_VALUE);
+        final long sequential = median(processor, from, to);
+        final long parallel = median(new Processor(TestData.export(1, logs, FROM, DAYS), 0), from, to);
+        System.out.printf("%12s %12s %16s %16s %8s%n", "window rows", "parallelism", "sequential [ms]", "parallel [ms]", "speedup");
+        System.out.printf("%12d %12d %16d %16d %8.2f%n", processor.getWindowSize(from, to, LabelFilter.ANY),
+                ForkJoinPool.getCommonPoolParallelism(), sequential, parallel, (double) sequential / parallel);
+    }
+
+    private static long median(final Processor processor, final Instant from, final Instant to) {
+        for (int i = 0; i < WARMUP; i++) {
+            processor.getHierarchyReport(from, to, ELEMENTS);
+        }
+        final long[] millis = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            processor.getHierarchyReport(from, to, ELEMENTS);
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(millis);
+        return millis[RUNS / 2];
+    }
+
+}
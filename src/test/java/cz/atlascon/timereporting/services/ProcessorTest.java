@@ -0,0 +1,59 @@
+package cz.atlascon.timereporting.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProcessorTest {
+
+    private static final LocalDate FROM = LocalDate.of(2020, 1, 1);
+
+    @Test
+    void parallelHierarchySameAsSequential() throws IOException {
+        final Processor sequential = new Processor(TestData.export(5, 300_000, FROM, 90), Integer.MAX_VALUE);
+        // every window is split into chunks of the minimal size
+        final Processor parallel = new Processor(TestData.export(5, 300_000, FROM, 90), 1);
+        final Instant from = FROM.atStartOfDay().toInstant(ZoneOffset.UTC);
+        final Instant to = from.plusSeconds(90 * 86_400L);
+        final List<List<ReportElement>> hierarchies = List.of(
+                List.of(ReportElement.PROJECT, ReportElement.ISSUE, ReportElement.USER),
+                List.of(ReportElement.USER, ReportElement.NAMESPACE),
+                List.of(ReportElement.PRODUCT, ReportElement.PROJECT));
+        final List<LabelFilter> filters = List.of(LabelFilter.ANY, LabelFilter.of(List.of("Label-1"), List.of("Label-2")));
+        for (List<ReportElement> elements : hierarchies) {
+            for (LabelFilter filter : filters) {
+                // whole days from the rollup and time logs with partial days around
+                assertSameReport(sequential, parallel, from, to, elements, filter, Integer.MAX_VALUE, Long.MIN_VALUE);
+                assertSameReport(sequential, parallel, from.plusSeconds(3600), to.minusSeconds(3600), elements, filter, 5, 3600);
+            }
+        }
+    }
+
+    private static void assertSameReport(final Processor expected,
+                                         final Processor actual,
+                                         final Instant from,
+                                         final Instant to,
+                                         final List<ReportElement> elements,
+                                         final LabelFilter filter,
+                                         final int maxChildren,
+                                         final long minValue) throws IOException {
+        assertEquals(json(expected.getHierarchyReport(from, to, elements, filter, maxChildren, minValue)),
+                json(actual.getHierarchyReport(from, to, elements, filter, maxChildren, minValue)),
+                () -> elements + " " + filter + " from " + from + " to " + to);
+    }
+
+    private static String json(final HierarchyReport report) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        report.write(out, false);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,74 @@
+package cz.atlascon.timereporting.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTrip() throws IOException {
+        final ExportData data = TestData.export(3, 100_000, LocalDate.of(2020, 1, 1), 60);
+        final Processor processor = new Processor(data, Integer.MAX_VALUE);
+        final Path file = dir.resolve("snapshot.bin");
+        SnapshotFile.write(processor, file);
+        assertSameData(processor, new Processor(SnapshotFile.read(file), Integer.MAX_VALUE));
+    }
+
+    @Test
+    void mappedRoundTrip() throws IOException {
+        final Processor processor = new Processor(TestData.export(3, 100_000, LocalDate.of(2020, 1, 1), 60), Integer.MAX_VALUE);
+        final Path file = dir.resolve("snapshot.bin");
+        SnapshotFile.write(processor, file);
+        final Storage storage = Storage.mapped(dir.resolve("gen-1"));
+        final Processor mapped = new Processor(SnapshotFile.read(file, storage), storage, Integer.MAX_VALUE);
+        assertSameData(processor, mapped);
+        // and back from the mapped one
+        final Path copy = dir.resolve("copy.bin");
+        SnapshotFile.write(mapped, copy);
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(copy));
+    }
+
+    @Test
+    void corrupted() throws IOException {
+        final Path file = dir.resolve("snapshot.bin");
+        SnapshotFile.write(new Processor(TestData.export(3, 1_000, LocalDate.of(2020, 1, 1), 10), Integer.MAX_VALUE), file);
+        final byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+        Files.write(file, new byte[bytes.length / 2]);
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+    }
+
+    private static void assertSameData(final Processor expected, final Processor actual) throws IOException {
+        assertArrayEquals(columns(expected), columns(actual));
+        assertEquals(expected.namespaces(), actual.namespaces());
+        assertEquals(expected.labels(), actual.labels());
+        assertEquals(expected.users(), actual.users());
+        assertEquals(expected.projects(), actual.projects());
+        assertEquals(expected.issues(), actual.issues());
+        assertEquals(expected.mergeRequests(), actual.mergeRequests());
+        assertEquals(expected.labelLinks(), actual.labelLinks());
+    }
+
+    private static byte[] columns(final Processor processor) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        processor.logs().write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+}
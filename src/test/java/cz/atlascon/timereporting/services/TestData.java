@@ -0,0 +1,166 @@
+package cz.atlascon.timereporting.services;
+
+import cz.atlascon.timereporting.domain.*;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * synthetic export for tests and benchmarks, the same seed always gives the same data
+ */
+public final class TestData {
+
+    private static final long SECONDS_PER_DAY = 86_400L;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private TestData() {
+    }
+
+    /**
+     * export of {@code logs} time logs created uniformly over {@code days} days from {@code from}
+     */
+    public static ExportData export(final long seed, final int logs, final LocalDate from, final int days) {
+        final Random random = new Random(seed);
+        final ExportData data = ExportData.empty();
+        final Instant created = from.atStartOfDay().toInstant(ZoneOffset.UTC);
+        for (int id = 1; id <= 4; id++) {
+            data.namespaces().put(id, new Namespace(id, "namespace-" + id, ""));
+        }
+        for (int id = 1; id <= 24; id++) {
+            data.projects().put(id, new Project(id, "project-" + id, "", 1 + random.nextInt(4)));
+        }
+        for (int id = 1; id <= 40; id++) {
+            data.users().put(id, new User(id, "user" + id + "@example.com", "User " + id));
+        }
+        for (int id = 1; id <= 12; id++) {
+            final String description = id <= 4 ? "produkt-product" + id : "";
+            data.labels().put(id, new Label(id, "Label-" + id, "#ffffff", description));
+        }
+        for (int id = 1; id <= 3000; id++) {
+            data.issues().put(id, new Issue(id, 1 + random.nextInt(40), 1 + random.nextInt(24), created, "Issue " + id, ""));
+        }
+        for (int id = 1; id <= 600; id++) {
+            data.mergeRequests().put(id, new MergeRequest(id, 1 + random.nextInt(40), 1 + random.nextInt(24),
+                    "master", "feature-" + id, created, "Merge request " + id));
+        }
+        for (int id = 1; id <= 5000; id++) {
+            final boolean issue = random.nextInt(5) > 0;
+            data.labelLinks().add(new LabelLink(id, 1 + random.nextInt(12),
+                    issue ? 1 + random.nextInt(3000) : 1 + random.nextInt(600),
+                    issue ? LabelLink.Type.ISSUE : LabelLink.Type.MERGE_REQUEST));
+        }
+        final long start = created.getEpochSecond();
+        for (int id = 1; id <= logs; id++) {
+            final long createdAt = start + (long) (random.nextDouble() * days * SECONDS_PER_DAY);
+            final boolean mergeRequest = random.nextInt(10) == 0;
+            // some users log time they later take back
+            final int timeSpent = random.nextInt(20) == 0 ? -600 * (1 + random.nextInt(8)) : 60 * (1 + random.nextInt(480));
+            data.logs().add(id,
+                    createdAt,
+                    createdAt + random.nextInt(3600),
+                    timeSpent,
+                    1 + random.nextInt(40),
+                    mergeRequest ? TimeLogStore.NONE : 1 + random.nextInt(3000),
+                    mergeRequest ? 1 + random.nextInt(600) : TimeLogStore.NONE);
+        }
+        return data;
+    }
+
+    /**
+     * data of the processor as export zip accepted by full import, time logs are updated when created
+     */
+    public static void zip(final Processor processor, final Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(out);
+             Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8)) {
+            entry(zip, writer, "namespaces.csv", new String[]{"id", "name", "description"}, csv -> {
+                for (Namespace n : processor.namespaces().values()) {
+                    csv.printRecord(n.id(), n.name(), n.description());
+                }
+            });
+            entry(zip, writer, "labels.csv", new String[]{"id", "title", "color", "description"}, csv -> {
+                for (Label l : processor.labels().values()) {
+                    csv.printRecord(l.id(), l.title(), l.color(), l.description());
+                }
+            });
+            entry(zip, writer, "users.csv", new String[]{"id", "email", "name"}, csv -> {
+                for (User u : processor.users().values()) {
+                    csv.printRecord(u.id(), u.email(), u.name());
+                }
+            });
+            entry(zip, writer, "projects.csv", new String[]{"id", "name", "description", "namespace_id"}, csv -> {
+                for (Project p : processor.projects().values()) {
+                    csv.printRecord(p.id(), p.name(), p.description(), p.namespace_id());
+                }
+            });
+            entry(zip, writer, "issues.csv", new String[]{"id", "author_id", "project_id", "created_at", "title", "description"}, csv -> {
+                for (Issue i : processor.issues().values()) {
+                    csv.printRecord(i.id(), i.author_id(), i.project_id(), timestamp(i.created_at()), i.title(), i.description());
+                }
+            });
+            entry(zip, writer, "merge_requests.csv",
+                    new String[]{"id", "author_id", "target_project_id", "target_branch", "source_branch", "created_at", "title"}, csv -> {
+                for (MergeRequest mr : processor.mergeRequests().values()) {
+                    csv.printRecord(mr.id(), mr.author_id(), mr.target_project_id(), mr.target_branch(), mr.source_branch(),
+                            timestamp(mr.created_at()), mr.title());
+                }
+            });
+            entry(zip, writer, "label_links.csv", new String[]{"id", "label_id", "target_id", "target_type"}, csv -> {
+                for (LabelLink ll : processor.labelLinks()) {
+                    csv.printRecord(ll.id(), ll.label_id(), ll.target_id(),
+                            ll.target_type() == LabelLink.Type.ISSUE ? "Issue" : "MergeRequest");
+                }
+            });
+            entry(zip, writer, "timelogs.csv",
+                    new String[]{"id", "time_spent", "user_id", "issue_id", "merge_request_id", "created_at", "updated_at"}, csv -> {
+                final TimeLogStore logs = processor.logs();
+                for (int row = 0; row < logs.size(); row++) {
+                    final String createdAt = timestamp(Instant.ofEpochSecond(logs.createdAt(row)));
+                    csv.printRecord(logs.id(row), logs.timeSpent(row), logs.userId(row), id(logs.issueId(row)),
+                            id(logs.mergeRequestId(row)), createdAt, createdAt);
+                }
+            });
+        }
+    }
+
+    private interface Rows {
+        void print(CSVPrinter csv) throws IOException;
+    }
+
+    // printer is only flushed, closing it would close the whole zip
+    private static void entry(final ZipOutputStream zip,
+                              final Writer writer,
+                              final String name,
+                              final String[] header,
+                              final Rows rows) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        final CSVPrinter csv = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(header));
+        rows.print(csv);
+        csv.flush();
+        zip.closeEntry();
+    }
+
+    private static String timestamp(final Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC).format(TIMESTAMP);
+    }
+
+    private static String id(final int id) {
+        return id == TimeLogStore.NONE ? "" : Integer.toString(id);
+    }
+
+}
@@ -0,0 +1,55 @@
+package cz.atlascon.timereporting.services;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * latency of one week hierarchy report over growing total number of logs, logs per day stay the same,
+ * so the week window has about the same rows every time - latency should not grow with the total
+ * <p>
+ * run with {@code java -Xmx4g -cp <test classpath> cz.atlascon.timereporting.services.WindowBenchmark [totals...]}
+ */
+public class WindowBenchmark {
+
+    private static final int LOGS_PER_DAY = 2_000;
+    private static final int WARMUP = 20;
+    private static final int RUNS = 50;
+    private static final LocalDate FROM = LocalDate.of(2010, 1, 1);
+    private static final List<ReportElement> ELEMENTS = List.of(ReportElement.PROJECT, ReportElement.ISSUE, ReportElement.USER);
+
+    public static void main(final String[] args) {
+        final int[] totals = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{250_000, 1_000_000, 4_000_000};
+        System.out.printf("%12s %12s %16s %16s%n", "total logs", "window rows", "time logs [us]", "rollup [us]");
+        for (int total : totals) {
+            final int days = total / LOGS_PER_DAY;
+            final Processor processor = new Processor(TestData.export(1, total, FROM, days), Integer.MAX_VALUE);
+            // last week, shifted by an hour to scan time logs, whole days go to the rollup
+            final Instant to = FROM.plusDays(days).atStartOfDay().toInstant(ZoneOffset.UTC);
+            final Instant from = to.minusSeconds(7 * 86_400L);
+            final long logsMicros = median(() -> processor.getHierarchyReport(from.plusSeconds(3600), to.plusSeconds(3600), ELEMENTS));
+            final long rollupMicros = median(() -> processor.getHierarchyReport(from, to, ELEMENTS));
+            System.out.printf("%12d %12d %16d %16d%n", total,
+                    processor.getWindowSize(from.plusSeconds(3600), to.plusSeconds(3600), LabelFilter.ANY), logsMicros, rollupMicros);
+        }
+    }
+
+    private static long median(final Runnable report) {
+        for (int i = 0; i < WARMUP; i++) {
+            report.run();
+        }
+        final long[] micros = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            report.run();
+            micros[i] = (System.nanoTime() - start) / 1_000;
+        }
+        Arrays.sort(micros);
+        return micros[RUNS / 2];
+    }
+
+}